@@ -0,0 +1,152 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Compares submitting and running a task with {@link ContextPropagation} against
+ * the hand-written approach of copying a context map into every task.
+ * Both variants propagate the given number of thread local values. Run with
+ * {@code -prof gc} to see the allocation rate per task.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextPropagationBenchmark {
+
+    @Param({"0", "3"})
+    private int carriers;
+    
+    private ContextPropagation propagation;
+    
+    private ThreadLocal<Map<String, Object>> map;
+    
+    private Runnable task;
+    
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        propagation = new ContextPropagation();
+        map = new ThreadLocal<Map<String, Object>>();
+        final Map<String, Object> values = Maps.newHashMap();
+        for (int i = 0; i < carriers; i++) {
+            final ThreadLocal<Object> local = new ThreadLocal<Object>();
+            local.set("context-" + i);
+            values.put("key-" + i, "context-" + i);
+            propagation.add(new Carrier(local));
+        }
+        map.set(values.isEmpty() ? null : values);
+        task = new Runnable() {
+            
+            @Override
+            public void run() {
+                blackhole.consume(this);
+            }
+            
+        };
+    }
+    
+    /**
+     * Captures a snapshot at submit time and attaches it around execution.
+     */
+    @Benchmark
+    public void snapshot() {
+        propagation.wrap(task).run();
+    }
+    
+    /**
+     * Copies the context map at submit time and swaps it in around execution,
+     * like the hand-written wrappers this facility replaces.
+     */
+    @Benchmark
+    public void mapCopy() {
+        final Map<String, Object> current = map.get();
+        final Map<String, Object> copy = current == null ? null : Maps.newHashMap(current);
+        final Runnable wrapped = new Runnable() {
+            
+            @Override
+            public void run() {
+                final Map<String, Object> previous = map.get();
+                map.set(copy == null ? null : Maps.newHashMap(copy));
+                try {
+                    task.run();
+                } finally {
+                    map.set(previous);
+                }
+            }
+            
+        };
+        wrapped.run();
+    }
+    
+    /**
+     * A carrier of one thread local value.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Carrier implements ContextCarrier<Object> {
+        
+        private final ThreadLocal<Object> local;
+        
+        public Carrier(ThreadLocal<Object> local) {
+            this.local = local;
+        }
+        
+        @Override
+        public Object capture() {
+            return local.get();
+        }
+        
+        @Override
+        public Object attach(Object context) {
+            final Object previous = local.get();
+            local.set(context);
+            return previous;
+        }
+        
+        @Override
+        public void detach(Object previous) {
+            local.set(previous);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.jmx.MBeanService;
+
+/**
+ * Compares the {@link LongTask} path against binding the argument into a
+ * {@link Runnable}, once for the bare {@link LongTaskRing} against a bounded
+ * queue and once end to end through a {@link ConfigurableExecutorService}.
+ * The end to end variants wait for each task to complete, so the worker side
+ * is part of every operation. Run with {@code -prof gc} to see the allocation
+ * rate per task.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongTaskBenchmark {
+
+    private final AtomicLong completed = new AtomicLong();
+    
+    private final LongTask task = new LongTask() {
+        
+        @Override
+        public void run(long argument) {
+            completed.lazySet(argument);
+        }
+        
+    };
+    
+    private LongTaskRing ring;
+    
+    private BlockingQueue<Runnable> queue;
+    
+    private ConfigurableExecutorService executor;
+    
+    private long argument;
+    
+    @Setup
+    public void setup() throws LifecycleException {
+        ring = new LongTaskRing(1024);
+        queue = new ArrayBlockingQueue<Runnable>(1024);
+        executor = new ConfigurableExecutorService("benchmark", 1, 1, 60, TimeUnit.SECONDS,
+            QueueMode.BLOCKING, 1024, Executors.defaultThreadFactory(), 1, TimeUnit.SECONDS,
+            noMBeanService(), new ShutdownCoordinator(), new TaskWatchdog(), new TimeoutWheel());
+        executor.initialize();
+    }
+    
+    @TearDown
+    public void tearDown() throws LifecycleException {
+        executor.dispose();
+    }
+    
+    /**
+     * Offers a task to the ring and runs it.
+     */
+    @Benchmark
+    public boolean ring() {
+        ring.offer(task, ++argument);
+        return ring.runNext();
+    }
+    
+    /**
+     * Offers a task bound to its argument to a bounded queue and runs it.
+     */
+    @Benchmark
+    public long queue() {
+        queue.offer(bind(++argument));
+        queue.poll().run();
+        return completed.get();
+    }
+    
+    /**
+     * Executes a task with {@link ConfigurableExecutorService#execute(LongTask, long)}
+     * and waits for it.
+     */
+    @Benchmark
+    public long executeLongTask() {
+        final long current = ++argument;
+        executor.execute(task, current);
+        return await(current);
+    }
+    
+    /**
+     * Executes a task bound to its argument with
+     * {@link ConfigurableExecutorService#execute(Runnable)} and waits for it.
+     */
+    @Benchmark
+    public long executeRunnable() {
+        final long current = ++argument;
+        executor.execute(bind(current));
+        return await(current);
+    }
+    
+    private Runnable bind(final long value) {
+        return new Runnable() {
+            
+            @Override
+            public void run() {
+                task.run(value);
+            }
+            
+        };
+    }
+    
+    private long await(long value) {
+        while (completed.get() != value) {
+            Thread.yield();
+        }
+        return value;
+    }
+    
+    private static MBeanService noMBeanService() {
+        return (MBeanService) Proxy.newProxyInstance(MBeanService.class.getClassLoader(),
+            new Class<?>[] {MBeanService.class}, new InvocationHandler() {
+                
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return null;
+                }
+                
+            });
+    }
+    
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import de.cosmocode.collections.Procedure;
+import de.cosmocode.palava.core.ForwardingRegistry;
+
+/**
+ * Abstract base for {@link AsyncRegistry} implementations which decorate another
+ * registry. Implements the class based convenience methods and batch notifications
+ * on top of {@link #notifyAsync(Key, Procedure)}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+abstract class AbstractAsyncRegistry extends ForwardingRegistry implements AsyncRegistry {
+
+    @Override
+    public <T> void notifyAsync(Class<T> type, Procedure<? super T> command) {
+        notifyAsync(Key.get(type), command);
+    }
+    
+    @Override
+    public <T, E> void notifyAsyncBatch(Class<T> type, Iterable<? extends E> events,
+        ListenerCommand<? super T, ? super E> command) {
+        notifyAsyncBatch(Key.get(type), events, command);
+    }
+    
+    @Override
+    public <T, E> void notifyAsyncBatch(Key<T> key, Iterable<? extends E> events,
+        ListenerCommand<? super T, ? super E> command) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(events, "Events");
+        Preconditions.checkNotNull(command, "Command");
+        final List<E> batch = ImmutableList.copyOf(events);
+        if (batch.isEmpty()) {
+            return;
+        }
+        notifyAsync(key, new BatchCommand<T, E>(batch, command));
+    }
+    
+}
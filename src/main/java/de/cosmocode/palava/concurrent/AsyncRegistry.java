@@ -17,6 +17,7 @@
 package de.cosmocode.palava.concurrent;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 import de.cosmocode.collections.Procedure;
@@ -67,4 +68,59 @@ public interface AsyncRegistry extends Registry {
      */
     <T> void notifyAsync(Key<T> key, Procedure<? super T> command);
     
+    /**
+     * Notifies all listeners for a specific type about a batch of events.
+     * 
+     * <p>
+     *   Using this method is equivalent to: <br />
+     *   {@code registry.notifyAsyncBatch(Key.get(type), events, command);}
+     * </p>
+     * 
+     * @since 2.6
+     * @param <T> the generic key type
+     * @param <E> the generic event type
+     * @param type the type's class literal
+     * @param events the events
+     * @param command the command being invoked for every listener and event
+     * @throws NullPointerException if type, events or command is null or events contains null
+     */
+    <T, E> void notifyAsyncBatch(Class<T> type, Iterable<? extends E> events, 
+        ListenerCommand<? super T, ? super E> command);
+    
+    /**
+     * Notifies all listeners for a specific binding key about a batch of events.
+     * The dispatch costs are paid once per batch: every listener gets exactly one
+     * task for the whole batch. Listeners implementing {@link BatchListener} receive
+     * all events in one call if all of them are instances of their
+     * {@link BatchListener#getEventType() event type}, all other listeners are
+     * notified by invoking command once per event inside that task.
+     * 
+     * This method returns immediately. Exceptions will be
+     * propagated to the {@link UncaughtExceptionHandler} of the
+     * underlying {@link ExecutorService}.
+     * 
+     * @since 2.6
+     * @param <T> the generic type
+     * @param <E> the generic event type
+     * @param key the binding key
+     * @param events the events
+     * @param command the command being invoked for every listener and event
+     * @throws NullPointerException if key, events or command is null or events contains null
+     */
+    <T, E> void notifyAsyncBatch(Key<T> key, Iterable<? extends E> events, 
+        ListenerCommand<? super T, ? super E> command);
+    
+    /**
+     * Runs all notifications of listeners which are instances of the given type
+     * on a dedicated executor instead of the shared one. This isolates slow
+     * listeners from fast ones. The per-listener concurrency limit applies to
+     * the dedicated executor as well.
+     * 
+     * @since 2.6
+     * @param listenerType the listener type
+     * @param executor the dedicated executor
+     * @throws NullPointerException if listenerType or executor is null
+     */
+    void isolate(Class<?> listenerType, Executor executor);
+    
 }
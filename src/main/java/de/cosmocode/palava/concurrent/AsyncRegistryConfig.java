@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Config keys used by {@link DefaultAsyncRegistry} and {@link DefaultDemandRegistry}.
+ * All keys are optional.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class AsyncRegistryConfig {
+
+    /**
+     * The maximum number of notifications which may run concurrently
+     * for one listener. Defaults to unbounded.
+     */
+    public static final String MAX_IN_FLIGHT = "registry.async.maxInFlightPerListener";
+    
+    /**
+     * The {@link OverflowPolicy} applied when a listener reached {@link #MAX_IN_FLIGHT}.
+     * Defaults to {@link OverflowPolicy#QUEUE}.
+     */
+    public static final String OVERFLOW_POLICY = "registry.async.overflowPolicy";
+    
+    /**
+     * The maximum number of notifications queued per listener using {@link OverflowPolicy#QUEUE}.
+     * Defaults to 1024.
+     * 
+     * @since 2.6
+     */
+    public static final String MAX_QUEUED = "registry.async.maxQueuedPerListener";
+    
+    /**
+     * The default number of pending notifications per key and listener
+     * of a {@link DemandRegistry}. Defaults to 1024.
+     */
+    public static final String BUFFER_SIZE = "registry.async.bufferSize";
+    
+    /**
+     * The default {@link DropPolicy} of a {@link DemandRegistry}.
+     * Defaults to {@link DropPolicy#BLOCK}.
+     */
+    public static final String DROP_POLICY = "registry.async.dropPolicy";
+    
+    /**
+     * The maximum time {@link AsyncRegistry#notifyAsync(de.cosmocode.palava.core.Registry.Key,
+     * de.cosmocode.collections.Procedure)} of a {@link DemandRegistry} waits for all listeners
+     * using {@link DropPolicy#BLOCK} together, before it drops the notification for those which
+     * are still behind. Defaults to 1.
+     * 
+     * @since 2.6
+     */
+    public static final String BLOCK_TIMEOUT = "registry.async.blockTimeout";
+    
+    /**
+     * The unit of {@link #BLOCK_TIMEOUT}. Defaults to seconds.
+     * 
+     * @since 2.6
+     */
+    public static final String BLOCK_TIMEOUT_UNIT = "registry.async.blockTimeoutUnit";
+    
+    private AsyncRegistryConfig() {
+        
+    }
+    
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.collections.Procedure;
+
+/**
+ * A {@link Procedure} which delivers a whole batch of events to a listener,
+ * either in one call if the listener is a {@link BatchListener} accepting all
+ * events of the batch or by looping over all events using a {@link ListenerCommand}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @param <T> the generic listener type
+ * @param <E> the generic event type
+ */
+final class BatchCommand<T, E> implements Procedure<T> {
+
+    private final List<E> events;
+    
+    private final ListenerCommand<? super T, ? super E> command;
+    
+    public BatchCommand(List<E> events, ListenerCommand<? super T, ? super E> command) {
+        this.events = Preconditions.checkNotNull(events, "Events");
+        this.command = Preconditions.checkNotNull(command, "Command");
+    }
+    
+    @Override
+    public void apply(T listener) {
+        if (listener instanceof BatchListener<?>) {
+            apply((BatchListener<?>) listener, listener);
+        } else {
+            forEach(listener);
+        }
+    }
+    
+    private <F> void apply(BatchListener<F> batchListener, T listener) {
+        final Class<F> type = batchListener.getEventType();
+        for (E event : events) {
+            if (!type.isInstance(event)) {
+                forEach(listener);
+                return;
+            }
+        }
+        // every event is an F and the list is immutable
+        @SuppressWarnings("unchecked")
+        final List<F> batch = (List<F>) events;
+        batchListener.onBatch(batch);
+    }
+    
+    private void forEach(T listener) {
+        for (E event : events) {
+            command.apply(listener, event);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("BatchCommand [%s, %d event(s)]", command, events.size());
+    }
+    
+}
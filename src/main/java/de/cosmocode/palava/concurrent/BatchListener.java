@@ -0,0 +1,46 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+
+/**
+ * Listeners may implement this interface to receive batches published using
+ * {@link AsyncRegistry#notifyAsyncBatch(Key, Iterable, ListenerCommand)} in one call.
+ * 
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @param <E> the generic event type
+ */
+public interface BatchListener<E> {
+
+    /**
+     * Returns the type of events this listener accepts. Batches containing other
+     * events are delivered one by one using the batch's {@link ListenerCommand}.
+     * 
+     * @return the event type
+     */
+    Class<E> getEventType();
+    
+    /**
+     * Handles a batch of events.
+     * 
+     * @param events an immutable, non empty list of events
+     */
+    void onBatch(List<E> events);
+    
+}
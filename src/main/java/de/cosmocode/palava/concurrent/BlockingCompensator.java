@@ -0,0 +1,235 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compensates tasks of one pool which declared to block using {@link ManagedBlocking}
+ * by raising the pool size by one per blocking task, up to a hard cap. The pool size
+ * is lowered again once the task stops blocking, and surplus workers exit when idle.
+ * Also reports tasks waiting on futures of their own pool, which may otherwise
+ * starve the pool. Only the first occurrence is logged as a warning, all further
+ * ones are counted and logged at debug level.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class BlockingCompensator implements ExecutionHook, BlockingCompensatorMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingCompensator.class);
+    
+    private static final ThreadLocal<Slot> CURRENT = new ThreadLocal<Slot>() {
+        
+        @Override
+        protected Slot initialValue() {
+            return new Slot();
+        }
+        
+    };
+    
+    private final String name;
+    
+    private final ThreadPoolExecutor pool;
+    
+    private final int maxCompensation;
+    
+    /**
+     * Guarded by this.
+     */
+    private int compensation;
+    
+    private final AtomicInteger blocking = new AtomicInteger();
+    
+    private final AtomicLong compensations = new AtomicLong();
+    
+    private final AtomicLong exhausted = new AtomicLong();
+    
+    private final AtomicLong selfBlocking = new AtomicLong();
+    
+    public BlockingCompensator(String name, ThreadPoolExecutor pool, int maxCompensation) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.pool = Preconditions.checkNotNull(pool, "Pool");
+        Preconditions.checkArgument(maxCompensation >= 0, "MaxCompensation must not be negative");
+        this.maxCompensation = maxCompensation;
+    }
+    
+    /**
+     * Returns the compensator of the pool running the current thread.
+     * 
+     * @return the current compensator or null if not running on a compensated pool
+     */
+    static BlockingCompensator current() {
+        return CURRENT.get().compensator;
+    }
+    
+    /**
+     * Checks whether the current thread is a worker of this compensator's pool.
+     * 
+     * @return true if called by a worker of this pool
+     */
+    boolean owns() {
+        return CURRENT.get().compensator == this;
+    }
+    
+    @Override
+    public void beforeExecute(Thread thread, Runnable task) {
+        final Slot slot = CURRENT.get();
+        slot.compensator = this;
+        slot.depth = 0;
+    }
+    
+    @Override
+    public void afterExecute(Runnable task, Throwable throwable) {
+        final Slot slot = CURRENT.get();
+        if (slot.depth > 0) {
+            LOG.warn("{} on {} didn't end blocking", task, name);
+            slot.depth = 1;
+            end();
+        }
+        slot.compensator = null;
+    }
+    
+    /**
+     * Called when the current task is about to block.
+     */
+    void begin() {
+        final Slot slot = CURRENT.get();
+        if (slot.depth++ > 0) {
+            return;
+        }
+        blocking.incrementAndGet();
+        slot.compensated = acquire();
+    }
+    
+    /**
+     * Called when the current task stopped blocking.
+     */
+    void end() {
+        final Slot slot = CURRENT.get();
+        Preconditions.checkState(slot.depth > 0, "Not blocking");
+        if (--slot.depth > 0) {
+            return;
+        }
+        blocking.decrementAndGet();
+        if (slot.compensated) {
+            slot.compensated = false;
+            release();
+        }
+    }
+    
+    /**
+     * Called when the current task is about to wait on the given future of this pool.
+     * 
+     * @param future the future
+     */
+    void selfBlocking(Object future) {
+        final long count = selfBlocking.incrementAndGet();
+        if (count == 1L) {
+            LOG.warn("Task on {} waits for {} of the same executor, which may starve it; " +
+                "further occurrences are only counted", name, future);
+        } else {
+            LOG.debug("Task on {} waits for {} of the same executor ({} times so far)",
+                new Object[] {name, future, count});
+        }
+    }
+    
+    private synchronized boolean acquire() {
+        if (compensation >= maxCompensation) {
+            exhausted.incrementAndGet();
+            return false;
+        }
+        compensation++;
+        compensations.incrementAndGet();
+        // the maximum must never drop below the core size
+        final int max = pool.getMaximumPoolSize();
+        if (max != Integer.MAX_VALUE) {
+            pool.setMaximumPoolSize(max + 1);
+        }
+        pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+        pool.prestartCoreThread();
+        return true;
+    }
+    
+    private synchronized void release() {
+        compensation--;
+        pool.setCorePoolSize(pool.getCorePoolSize() - 1);
+        final int max = pool.getMaximumPoolSize();
+        if (max != Integer.MAX_VALUE) {
+            pool.setMaximumPoolSize(max - 1);
+        }
+    }
+    
+    @Override
+    public int getMaxCompensation() {
+        return maxCompensation;
+    }
+    
+    @Override
+    public synchronized int getCompensation() {
+        return compensation;
+    }
+    
+    @Override
+    public int getBlockingCount() {
+        return blocking.get();
+    }
+    
+    @Override
+    public long getCompensationCount() {
+        return compensations.get();
+    }
+    
+    @Override
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+    
+    @Override
+    public long getSelfBlockingCount() {
+        return selfBlocking.get();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("BlockingCompensator [%s]", name);
+    }
+    
+    /**
+     * Per thread state.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Slot {
+        
+        private BlockingCompensator compensator;
+        
+        private int depth;
+        
+        private boolean compensated;
+        
+    }
+    
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link BlockingCompensator}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface BlockingCompensatorMBean {
+
+    /**
+     * Returns the maximum number of concurrently compensating workers.
+     * 
+     * @return the hard cap of compensating workers
+     */
+    int getMaxCompensation();
+    
+    /**
+     * Returns the number of currently compensating workers.
+     * 
+     * @return the current compensation
+     */
+    int getCompensation();
+    
+    /**
+     * Returns the number of tasks which are currently blocking.
+     * 
+     * @return the number of blocking tasks
+     */
+    int getBlockingCount();
+    
+    /**
+     * Returns the total number of started compensating workers.
+     * 
+     * @return the number of compensations so far
+     */
+    long getCompensationCount();
+    
+    /**
+     * Returns the total number of blocking tasks which weren't compensated
+     * because the cap had been reached.
+     * 
+     * @return the number of uncompensated blocks so far
+     */
+    long getExhaustedCount();
+    
+    /**
+     * Returns the total number of tasks which waited on a future of
+     * their own executor.
+     * 
+     * @return the number of self blocking tasks so far
+     */
+    long getSelfBlockingCount();
+    
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link Executor} which limits the number of concurrently running
+ * commands on top of another executor. Commands exceeding the limit
+ * are handled according to the configured {@link OverflowPolicy}. Queued
+ * commands are bounded, commands exceeding that bound are dropped.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class Bulkhead implements Executor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Bulkhead.class);
+    
+    private final String name;
+    
+    private volatile Executor executor;
+    
+    private final int maxInFlight;
+    
+    private final int maxQueued;
+    
+    private final OverflowPolicy policy;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    private final Queue<Runnable> overflow = new ConcurrentLinkedQueue<Runnable>();
+    
+    private final AtomicInteger queued = new AtomicInteger();
+    
+    private final AtomicLong dropped = new AtomicLong();
+    
+    public Bulkhead(String name, Executor executor, int maxInFlight, int maxQueued, OverflowPolicy policy) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+        Preconditions.checkArgument(maxInFlight > 0, "MaxInFlight must be positive, but was %s", maxInFlight);
+        this.maxInFlight = maxInFlight;
+        Preconditions.checkArgument(maxQueued >= 0, "MaxQueued must not be negative, but was %s", maxQueued);
+        this.maxQueued = maxQueued;
+        this.policy = Preconditions.checkNotNull(policy, "Policy");
+    }
+    
+    /**
+     * Changes the executor which runs subsequent commands. Running and queued
+     * commands still count against the limit of this bulkhead.
+     * 
+     * @param executor the new executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+    }
+    
+    @Override
+    public void execute(Runnable command) {
+        Preconditions.checkNotNull(command, "Command");
+        if (tryAcquire()) {
+            submit(command);
+        } else {
+            switch (policy) {
+                case QUEUE: {
+                    if (queued.incrementAndGet() > maxQueued) {
+                        queued.decrementAndGet();
+                        final long count = dropped.incrementAndGet();
+                        LOG.warn("{} is full, dropped {}, {} dropped so far", new Object[] {this, command, count});
+                    } else {
+                        overflow.add(command);
+                    }
+                    // a permit may have been released in the meantime
+                    drain();
+                    break;
+                }
+                case DROP: {
+                    final long count = dropped.incrementAndGet();
+                    LOG.debug("{} dropped {}, {} dropped so far", new Object[] {this, command, count});
+                    break;
+                }
+                case CALLER_RUNS: {
+                    command.run();
+                    break;
+                }
+                default: {
+                    throw new AssertionError("Unknown policy " + policy);
+                }
+            }
+        }
+    }
+    
+    private boolean tryAcquire() {
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            } else if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    private void submit(final Runnable command) {
+        try {
+            executor.execute(new Runnable() {
+                
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        inFlight.decrementAndGet();
+                        drain();
+                    }
+                }
+                
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+    
+    private void drain() {
+        while (!overflow.isEmpty() && tryAcquire()) {
+            final Runnable next = overflow.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+            } else {
+                queued.decrementAndGet();
+                try {
+                    submit(next);
+                } catch (RejectedExecutionException e) {
+                    LOG.warn("{} was unable to run queued {}", this, next);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of currently running commands.
+     * 
+     * @return the number of running commands
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * Returns the number of commands waiting for a free slot.
+     * 
+     * @return the number of queued commands
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+    
+    /**
+     * Returns the number of commands dropped so far.
+     * 
+     * @return the number of dropped commands
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Bulkhead [%s]", name);
+    }
+    
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link FutureTask} which treats waiting on it from a worker of its own
+ * pool as managed blocking and reports it to the {@link BlockingCompensator}.
+ * If its pool queues by tenant, it carries the tenant of its task, determined using
+ * {@link Tenants#of(Object)} in the submitting thread, so {@link TenantQueue}s queue
+ * it accordingly. Otherwise the tenant isn't resolved and is always null.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @param <T> the generic result type
+ */
+class CompensatingFuture<T> extends FutureTask<T> implements TenantAware {
+
+    private final BlockingCompensator compensator;
+    
+    private final String tenant;
+    
+    public CompensatingFuture(Callable<T> callable, BlockingCompensator compensator, boolean tenanted) {
+        super(callable);
+        this.compensator = compensator;
+        this.tenant = tenanted ? Tenants.of(callable) : null;
+    }
+    
+    public CompensatingFuture(Runnable runnable, T result, BlockingCompensator compensator, boolean tenanted) {
+        super(runnable, result);
+        this.compensator = compensator;
+        this.tenant = tenanted ? Tenants.of(runnable) : null;
+    }
+    
+    @Override
+    public String getTenant() {
+        return tenant;
+    }
+    
+    private boolean compensate() {
+        if (compensator == null || isDone() || !compensator.owns()) {
+            return false;
+        }
+        compensator.selfBlocking(this);
+        return true;
+    }
+    
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        if (!compensate()) {
+            return super.get();
+        }
+        compensator.begin();
+        try {
+            return super.get();
+        } finally {
+            compensator.end();
+        }
+    }
+    
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!compensate()) {
+            return super.get(timeout, unit);
+        }
+        compensator.begin();
+        try {
+            return super.get(timeout, unit);
+        } finally {
+            compensator.end();
+        }
+    }
+    
+}
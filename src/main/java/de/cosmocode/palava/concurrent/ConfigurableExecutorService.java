@@ -16,22 +16,32 @@
 
 package de.cosmocode.palava.concurrent;
 
+import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -46,8 +56,8 @@ import de.cosmocode.palava.jmx.MBeanService;
  *
  * @author Willi Schoenborn
  */
-final class ConfigurableExecutorService implements ExecutorService, Initializable, Disposable, 
-    ConfigurableExecutorServiceMBean {
+final class ConfigurableExecutorService implements ExecutorService, LongTaskExecutor, TimeoutExecutor, 
+    Initializable, Disposable, ConfigurableExecutorServiceMBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(ConfigurableExecutorService.class);
     
@@ -67,16 +77,118 @@ final class ConfigurableExecutorService implements ExecutorService, Initializabl
     
     private ThreadFactory factory;
     
+    private ThreadProvider provider;
+    
+    private ContextPropagator propagator;
+    
     private RejectedExecutionHandler handler = new ThreadPoolExecutor.AbortPolicy();
     
     private final long shutdownTimeout;
     
     private final TimeUnit shutdownTimeoutUnit;
     
-    private ThreadPoolExecutor executor;
+    private StartupMode startupMode = StartupMode.EAGER;
+    
+    private List<Runnable> warmupTasks = Collections.emptyList();
+    
+    private boolean allowCoreThreadTimeout;
+    
+    private String tenantWeights = "";
+    
+    private WaitStrategy waitStrategy;
+    
+    private int spinTries = 1000;
+    
+    private int yieldTries = 100;
+    
+    private BlockingQueue<Runnable> queue;
+    
+    private WaitingQueue waitingQueue;
+    
+    private long sheddingTarget = -1L;
+    
+    private long sheddingInterval = 100L;
+    
+    private TimeUnit sheddingUnit = TimeUnit.MILLISECONDS;
+    
+    private File spillDirectory;
+    
+    private long stuckThreshold = -1L;
+    
+    private TimeUnit stuckThresholdUnit = TimeUnit.SECONDS;
+    
+    private boolean stuckInterrupt;
+    
+    private TaskWatch watch;
+    
+    private int profilingSampleRate = -1;
+    
+    private int profilingTopK = 20;
+    
+    private TaskProfiler profiler;
+    
+    private int maxCompensation = -1;
+    
+    private BlockingCompensator compensator;
+    
+    private TaskEventSink events;
+    
+    private Set<ExecutorInterceptor> sharedInterceptors = ImmutableSet.of();
+    
+    private Set<ExecutorInterceptor> executorInterceptors = ImmutableSet.of();
+    
+    private InterceptorChain interceptors;
+    
+    private TaskDecorator decorator;
+    
+    private int ringCapacity = 1024;
+    
+    private LongTaskRing ring;
+    
+    private int maxDrainers;
+    
+    private final AtomicInteger drainers = new AtomicInteger();
+    
+    private final AtomicLong timedOut = new AtomicLong();
+    
+    private final Runnable drainer = new Runnable() {
+        
+        @Override
+        public void run() {
+            do {
+                try {
+                    while (ring.runNext()) {
+                        continue;
+                    }
+                } finally {
+                    drainers.decrementAndGet();
+                }
+                // a producer may have seen all drainers busy right before we stopped
+            } while (!ring.isEmpty() && acquireDrainer());
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("Drainer [%s]", name);
+        }
+        
+    };
+    
+    private volatile ThreadPoolExecutor executor;
+    
+    /**
+     * Set once shut down or disposed, guarded by this. Prevents lazy creation afterwards.
+     */
+    private volatile boolean shutdown;
 
     private final MBeanService mBeanService;
     
+    private final ShutdownCoordinator coordinator;
+    
+    private final TaskWatchdog watchdog;
+    
+    private final TimeoutWheel wheel;
+    
     @Inject
     public ConfigurableExecutorService(
         @Named(ExecutorConfig.NAME) String name,
@@ -89,7 +201,10 @@ final class ConfigurableExecutorService implements ExecutorService, Initializabl
         ThreadFactory defaultFactory,
         @Named(ExecutorConfig.SHUTDOWN_TIMEOUT) long shutdownTimeout,
         @Named(ExecutorConfig.SHUTDOWN_TIMEOUT_UNIT) TimeUnit shutdownTimeoutUnit,
-        MBeanService mBeanService) {
+        MBeanService mBeanService,
+        ShutdownCoordinator coordinator,
+        TaskWatchdog watchdog,
+        TimeoutWheel wheel) {
 
         this.name = name;
         this.minPoolSize = minPoolSize;
@@ -102,6 +217,9 @@ final class ConfigurableExecutorService implements ExecutorService, Initializabl
         this.shutdownTimeout = shutdownTimeout;
         this.shutdownTimeoutUnit = Preconditions.checkNotNull(shutdownTimeoutUnit, "ShutdownTimeoutUnit");
         this.mBeanService = Preconditions.checkNotNull(mBeanService, "MBeanService");
+        this.coordinator = Preconditions.checkNotNull(coordinator, "Coordinator");
+        this.watchdog = Preconditions.checkNotNull(watchdog, "Watchdog");
+        this.wheel = Preconditions.checkNotNull(wheel, "Wheel");
     }
     
     @Inject(optional = true)
@@ -109,88 +227,502 @@ final class ConfigurableExecutorService implements ExecutorService, Initializabl
         this.factory = Preconditions.checkNotNull(factory, "Factory");
     }
     
+    @Inject(optional = true)
+    void setThreadProvider(ThreadProvider provider) {
+        this.provider = Preconditions.checkNotNull(provider, "Provider");
+    }
+    
+    @Inject(optional = true)
+    void setContextPropagator(ContextPropagator propagator) {
+        this.propagator = Preconditions.checkNotNull(propagator, "Propagator");
+    }
+    
     @Inject(optional = true)
     void setHandler(@Named(ExecutorConfig.REJECTION_HANDLER) RejectedExecutionHandler handler) {
         this.handler = Preconditions.checkNotNull(handler, "Handler");
     }
     
+    @Inject(optional = true)
+    void setStartupMode(@Named(ExecutorConfig.STARTUP_MODE) StartupMode startupMode) {
+        this.startupMode = Preconditions.checkNotNull(startupMode, "StartupMode");
+    }
+    
+    @Inject(optional = true)
+    void setWarmupTasks(@Named(ExecutorConfig.WARMUP_TASKS) List<Runnable> warmupTasks) {
+        this.warmupTasks = Preconditions.checkNotNull(warmupTasks, "WarmupTasks");
+    }
+    
+    @Inject(optional = true)
+    void setAllowCoreThreadTimeout(@Named(ExecutorConfig.ALLOW_CORE_THREAD_TIMEOUT) boolean allowCoreThreadTimeout) {
+        this.allowCoreThreadTimeout = allowCoreThreadTimeout;
+    }
+    
+    @Inject(optional = true)
+    void setTenantWeights(@Named(ExecutorConfig.TENANT_WEIGHTS) String tenantWeights) {
+        this.tenantWeights = Preconditions.checkNotNull(tenantWeights, "TenantWeights");
+    }
+    
+    @Inject(optional = true)
+    void setWaitStrategy(@Named(ExecutorConfig.WAIT_STRATEGY) WaitStrategy waitStrategy) {
+        this.waitStrategy = Preconditions.checkNotNull(waitStrategy, "WaitStrategy");
+    }
+    
+    @Inject(optional = true)
+    void setSpinTries(@Named(ExecutorConfig.SPIN_TRIES) int spinTries) {
+        Preconditions.checkArgument(spinTries >= 0, "SpinTries must not be negative");
+        this.spinTries = spinTries;
+    }
+    
+    @Inject(optional = true)
+    void setYieldTries(@Named(ExecutorConfig.YIELD_TRIES) int yieldTries) {
+        Preconditions.checkArgument(yieldTries >= 0, "YieldTries must not be negative");
+        this.yieldTries = yieldTries;
+    }
+    
+    @Inject(optional = true)
+    void setRingCapacity(@Named(ExecutorConfig.RING_CAPACITY) int ringCapacity) {
+        Preconditions.checkArgument(ringCapacity > 0, "RingCapacity must be positive");
+        Preconditions.checkArgument(ringCapacity <= LongTaskRing.MAXIMUM_CAPACITY,
+            "RingCapacity must not exceed %s", LongTaskRing.MAXIMUM_CAPACITY);
+        this.ringCapacity = ringCapacity;
+    }
+    
+    @Inject(optional = true)
+    void setSheddingTarget(@Named(ExecutorConfig.SHEDDING_TARGET) long sheddingTarget) {
+        this.sheddingTarget = sheddingTarget;
+    }
+    
+    @Inject(optional = true)
+    void setSheddingInterval(@Named(ExecutorConfig.SHEDDING_INTERVAL) long sheddingInterval) {
+        this.sheddingInterval = sheddingInterval;
+    }
+    
+    @Inject(optional = true)
+    void setSheddingUnit(@Named(ExecutorConfig.SHEDDING_UNIT) TimeUnit sheddingUnit) {
+        this.sheddingUnit = Preconditions.checkNotNull(sheddingUnit, "SheddingUnit");
+    }
+    
+    @Inject(optional = true)
+    void setSpillDirectory(@Named(ExecutorConfig.SPILL_DIRECTORY) File spillDirectory) {
+        this.spillDirectory = Preconditions.checkNotNull(spillDirectory, "SpillDirectory");
+    }
+    
+    @Inject(optional = true)
+    void setStuckThreshold(@Named(ExecutorConfig.STUCK_THRESHOLD) long stuckThreshold) {
+        Preconditions.checkArgument(stuckThreshold > 0, "StuckThreshold must be positive");
+        this.stuckThreshold = stuckThreshold;
+    }
+    
+    @Inject(optional = true)
+    void setStuckThresholdUnit(@Named(ExecutorConfig.STUCK_THRESHOLD_UNIT) TimeUnit stuckThresholdUnit) {
+        this.stuckThresholdUnit = Preconditions.checkNotNull(stuckThresholdUnit, "StuckThresholdUnit");
+    }
+    
+    @Inject(optional = true)
+    void setStuckInterrupt(@Named(ExecutorConfig.STUCK_INTERRUPT) boolean stuckInterrupt) {
+        this.stuckInterrupt = stuckInterrupt;
+    }
+    
+    @Inject(optional = true)
+    void setProfilingSampleRate(@Named(ExecutorConfig.PROFILING_SAMPLE_RATE) int profilingSampleRate) {
+        Preconditions.checkArgument(profilingSampleRate > 0, "ProfilingSampleRate must be positive");
+        this.profilingSampleRate = profilingSampleRate;
+    }
+    
+    @Inject(optional = true)
+    void setProfilingTopK(@Named(ExecutorConfig.PROFILING_TOP_K) int profilingTopK) {
+        Preconditions.checkArgument(profilingTopK > 0, "ProfilingTopK must be positive");
+        this.profilingTopK = profilingTopK;
+    }
+    
+    @Inject(optional = true)
+    void setMaxCompensation(@Named(ExecutorConfig.MAX_COMPENSATION) int maxCompensation) {
+        Preconditions.checkArgument(maxCompensation >= 0, "MaxCompensation must not be negative");
+        this.maxCompensation = maxCompensation;
+    }
+    
+    @Inject(optional = true)
+    void setFlightRecorder(@Named(ExecutorConfig.FLIGHT_RECORDER) boolean flightRecorder) {
+        this.events = flightRecorder ? TaskEvents.flightRecorder() : null;
+    }
+    
+    @Inject(optional = true)
+    void setInterceptors(Set<ExecutorInterceptor> interceptors) {
+        this.sharedInterceptors = Preconditions.checkNotNull(interceptors, "Interceptors");
+    }
+    
+    @Inject(optional = true)
+    void setExecutorInterceptors(@Named(ExecutorConfig.INTERCEPTORS) Set<ExecutorInterceptor> interceptors) {
+        this.executorInterceptors = Preconditions.checkNotNull(interceptors, "ExecutorInterceptors");
+    }
+    
     @Override
     public void initialize() throws LifecycleException {
-        executor = new ThreadPoolExecutor(
-            minPoolSize, maxPoolSize,
-            keepAliveTime, keepAliveTimeUnit,
-            queueCapacity == -1 ? queueMode.create() : queueMode.create(queueCapacity),
-            factory, handler
-        );
-        
-        mBeanService.register(this, "name", name);
+        // checked here, because lazily started pools would fail on first use only
+        Preconditions.checkState(!allowCoreThreadTimeout || keepAliveTime > 0,
+            "AllowCoreThreadTimeout requires a positive keep alive time, but was %s %s",
+            keepAliveTime, keepAliveTimeUnit);
+        switch (startupMode) {
+            case EAGER: {
+                create();
+                break;
+            }
+            case LAZY: {
+                LOG.info("{} will be created on first use", this);
+                break;
+            }
+            case PRESTART: {
+                final int started = create().prestartAllCoreThreads();
+                LOG.info("Prestarted {} core thread(s) of {}", started, this);
+                break;
+            }
+            case WARMUP: {
+                final ThreadPoolExecutor pool = create();
+                pool.prestartAllCoreThreads();
+                warmup(pool);
+                break;
+            }
+            default: {
+                throw new AssertionError("Unknown startup mode " + startupMode);
+            }
+        }
+    }
+    
+    private void warmup(ThreadPoolExecutor pool) throws LifecycleException {
+        LOG.info("Running {} warmup task(s) on {}", warmupTasks.size(), this);
+        final List<Future<?>> futures = Lists.newArrayListWithCapacity(warmupTasks.size());
+        for (Runnable task : warmupTasks) {
+            futures.add(pool.submit(task));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LifecycleException(e);
+        } catch (ExecutionException e) {
+            throw new LifecycleException(e.getCause());
+        }
+    }
+    
+    /**
+     * Creates the underlying pool if it doesn't exist yet.
+     * 
+     * @return the underlying pool
+     * @throws RejectedExecutionException if this executor has been shut down before the pool was created
+     */
+    private synchronized ThreadPoolExecutor create() {
+        if (executor == null) {
+            if (shutdown) {
+                throw new RejectedExecutionException(this + " has been shut down");
+            }
+            interceptors = InterceptorChain.of(name, Sets.union(sharedInterceptors, executorInterceptors));
+            Preconditions.checkState(queueMode != QueueMode.SINGLE_CONSUMER || maxPoolSize == 1,
+                "%s requires a maxPoolSize of 1, but was %s", queueMode, maxPoolSize);
+            // compensating blocking tasks raises the pool size beyond one thread
+            Preconditions.checkState(queueMode != QueueMode.SINGLE_CONSUMER || maxCompensation == -1,
+                "%s can't be used with blocking compensation", queueMode);
+            // spilling requires serializable and priority comparable tasks, all of these wrap them
+            Preconditions.checkState((queueMode != QueueMode.SPILLING && queueMode != QueueMode.PRIORITY) || 
+                (profilingSampleRate == -1 && interceptors == null && events == null),
+                "%s can't be used with profiling, interceptors or flight recording", queueMode);
+            queue = queueCapacity == -1 ? queueMode.create() : queueMode.create(queueCapacity);
+            if (waitStrategy != null) {
+                Preconditions.checkState(waitStrategy == WaitStrategy.PARK || queueMode != QueueMode.SYNCHRONOUS,
+                    "%s can't be used with %s", waitStrategy, queueMode);
+                waitingQueue = new WaitingQueue(queue, waitStrategy, spinTries, yieldTries);
+            }
+            final BlockingQueue<Runnable> workQueue = waitingQueue == null ? queue : waitingQueue;
+            final RejectedExecutionHandler rejections = new DrainerRejection(events == null ? 
+                handler : TaskEvents.trace(events, name, handler));
+            final InstrumentedThreadPoolExecutor pool;
+            if (sheddingTarget == -1L) {
+                pool = new InstrumentedThreadPoolExecutor(
+                    minPoolSize, maxPoolSize,
+                    keepAliveTime, keepAliveTimeUnit,
+                    workQueue, ThreadProviders.threadFactory(provider, factory, name), rejections
+                );
+            } else {
+                pool = new SheddingThreadPoolExecutor(
+                    minPoolSize, maxPoolSize,
+                    keepAliveTime, keepAliveTimeUnit,
+                    workQueue, ThreadProviders.threadFactory(provider, factory, name), rejections,
+                    sheddingTarget, sheddingInterval, sheddingUnit
+                );
+            }
+            pool.allowCoreThreadTimeOut(allowCoreThreadTimeout);
+            pool.setTenanted(queue instanceof TenantQueue);
+            ring = new LongTaskRing(ringCapacity);
+            maxDrainers = Math.max(1, Math.min(minPoolSize, maxPoolSize));
+            
+            coordinator.register(this, pool, shutdownTimeout, shutdownTimeoutUnit, new Runnable() {
+                
+                @Override
+                public void run() {
+                    cleanup();
+                }
+                
+            });
+            wheel.register(this);
+            mBeanService.register(this, "name", name);
+            if (queue instanceof TenantQueue) {
+                configureTenants(TenantQueue.class.cast(queue));
+                mBeanService.register(queue, "name", name);
+            }
+            if (queue instanceof SpillingQueue) {
+                if (spillDirectory != null) {
+                    SpillingQueue.class.cast(queue).setDirectory(spillDirectory);
+                }
+                mBeanService.register(queue, "name", name);
+            }
+            if (waitingQueue != null) {
+                mBeanService.register(waitingQueue, "name", name);
+            }
+            if (pool instanceof SheddingThreadPoolExecutor) {
+                mBeanService.register(pool, "name", name);
+            }
+            if (profilingSampleRate != -1) {
+                profiler = new TaskProfiler(profilingSampleRate, profilingTopK);
+                mBeanService.register(profiler, "name", name);
+            }
+            if (stuckThreshold != -1L) {
+                watch = new TaskWatch(name, stuckThreshold, stuckThresholdUnit, stuckInterrupt);
+                pool.addHook(watch);
+                ring.setWatch(watch);
+                watchdog.register(watch);
+                mBeanService.register(watch, "name", name);
+            }
+            if (maxCompensation != -1) {
+                compensator = new BlockingCompensator(name, pool, maxCompensation);
+                pool.addHook(compensator);
+                pool.setCompensator(compensator);
+                mBeanService.register(compensator, "name", name);
+            }
+            decorator = new TaskDecorator(name, profiler, interceptors, propagator, events);
+            executor = pool;
+        }
+        return executor;
+    }
+    
+    private void configureTenants(TenantQueue tenantQueue) {
+        for (String pair : tenantWeights.split(",")) {
+            if (pair.trim().length() == 0) {
+                continue;
+            }
+            final String[] parts = pair.split("=");
+            Preconditions.checkArgument(parts.length == 2, "Illegal tenant weight %s", pair);
+            tenantQueue.setWeight(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+    }
+    
+    private ThreadPoolExecutor executor() {
+        final ThreadPoolExecutor current = executor;
+        return current == null ? create() : current;
+    }
+    
+    /**
+     * Returns the decorator of this executor, creating the underlying pool first
+     * if necessary, because the profiler is created along with the pool.
+     * 
+     * @return the decorator
+     */
+    private TaskDecorator decorator() {
+        executor();
+        return decorator;
+    }
+    
+    /**
+     * Returns the compensator of this executor, creating the underlying pool first
+     * if necessary, because the compensator is created along with the pool.
+     * 
+     * @return the compensator or null if blocking tasks are not compensated
+     */
+    private BlockingCompensator compensator() {
+        executor();
+        return compensator;
+    }
+    
+    /**
+     * Decorates the given task. Tasks which are {@link TenantAware} keep their tenant
+     * if this executor queues by tenant.
+     * 
+     * @param task the task
+     * @return the decorated task
+     */
+    private Runnable decorate(Runnable task) {
+        final Runnable decorated = decorator().decorate(task, 0L);
+        if (decorated != task && task instanceof TenantAware && queue instanceof TenantQueue) {
+            return Tenants.tag(Tenants.of(task), decorated);
+        } else {
+            return decorated;
+        }
+    }
+    
+    private <T> Callable<T> decorate(Callable<T> task) {
+        final Callable<T> decorated = decorator().decorate(task, 0L);
+        if (decorated != task && task instanceof TenantAware && queue instanceof TenantQueue) {
+            return Tenants.tag(Tenants.of(task), decorated);
+        } else {
+            return decorated;
+        }
+    }
+    
+    private <T> Collection<? extends Callable<T>> decorate(Collection<? extends Callable<T>> tasks) {
+        // creates the queue if necessary
+        final TaskDecorator current = decorator();
+        if (queue instanceof TenantQueue) {
+            // every task keeps its own tenant
+            final List<Callable<T>> decorated = Lists.newArrayListWithCapacity(tasks.size());
+            for (Callable<T> task : tasks) {
+                decorated.add(decorate(task));
+            }
+            return decorated;
+        } else {
+            return current.decorate(tasks);
+        }
     }
     
     @Override
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-        return executor.awaitTermination(timeout, unit);
+        final ThreadPoolExecutor current = executor;
+        // a pool which has never been created terminates as soon as it's shut down
+        return current == null ? shutdown : current.awaitTermination(timeout, unit);
     }
 
     @Override
     public void execute(Runnable command) {
-        executor.execute(command);
+        executor().execute(decorate(command));
+    }
+
+    @Override
+    public void execute(final LongTask task, final long argument) {
+        Preconditions.checkNotNull(task, "Task");
+        final ThreadPoolExecutor pool = executor();
+        if (pool.isShutdown()) {
+            throw new RejectedExecutionException(this + " has been shut down");
+        } else if (ring.offer(task, argument)) {
+            if (acquireDrainer()) {
+                // a rejected drainer is handled by the DrainerRejection
+                pool.execute(drainer);
+            }
+        } else {
+            LOG.trace("Ring of {} is full, falling back to regular execution", this);
+            pool.execute(new Runnable() {
+                
+                @Override
+                public void run() {
+                    task.run(argument);
+                }
+                
+            });
+        }
+    }
+    
+    private boolean acquireDrainer() {
+        while (true) {
+            final int current = drainers.get();
+            if (current >= maxDrainers) {
+                return false;
+            } else if (drainers.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
         throws InterruptedException {
-        return executor.invokeAll(tasks, timeout, unit);
+        return executor().invokeAll(decorate(tasks), timeout, unit);
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        return executor.invokeAll(tasks);
+        return executor().invokeAll(decorate(tasks));
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
         throws InterruptedException, ExecutionException, TimeoutException {
-        return executor.invokeAny(tasks, timeout, unit);
+        return executor().invokeAny(decorate(tasks), timeout, unit);
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        return executor.invokeAny(tasks);
+        return executor().invokeAny(decorate(tasks));
     }
 
     @Override
     public boolean isShutdown() {
-        return executor.isShutdown();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? shutdown : current.isShutdown();
     }
 
     @Override
     public boolean isTerminated() {
-        return executor.isTerminated();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? shutdown : current.isTerminated();
     }
 
     @Override
     public void shutdown() {
-        executor.shutdown();
+        final ThreadPoolExecutor current;
+        synchronized (this) {
+            shutdown = true;
+            current = executor;
+        }
+        if (current != null) {
+            current.shutdown();
+        }
     }
 
     @Override
     public List<Runnable> shutdownNow() {
-        return executor.shutdownNow();
+        final ThreadPoolExecutor current;
+        synchronized (this) {
+            shutdown = true;
+            current = executor;
+        }
+        return current == null ? Collections.<Runnable>emptyList() : current.shutdownNow();
     }
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return executor.submit(task);
+        return executor().submit(decorate(task));
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return executor.submit(task, result);
+        return executor().submit(decorate(task), result);
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return executor.submit(task);
+        return executor().submit(decorate(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task, long timeout, TimeUnit unit) {
+        Preconditions.checkArgument(timeout > 0, "Timeout must be positive, but was %s", timeout);
+        return execute(new TimedTask<T>(decorate(task)), timeout, unit);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task, long timeout, TimeUnit unit) {
+        Preconditions.checkArgument(timeout > 0, "Timeout must be positive, but was %s", timeout);
+        return execute(new TimedTask<Object>(decorate(task), null), timeout, unit);
+    }
+    
+    private <T> Future<T> execute(TimedTask<T> task, long timeout, TimeUnit unit) {
+        // scheduled before executing, so done() always sees the timeout
+        task.timeout = wheel.schedule(task.expiry, timeout, unit);
+        try {
+            executor().execute(task);
+        } catch (RejectedExecutionException e) {
+            task.timeout.cancel();
+            throw e;
+        }
+        return task;
     }
 
     @Override
@@ -200,59 +732,97 @@ final class ConfigurableExecutorService implements ExecutorService, Initializabl
 
     @Override
     public int getActiveCount() {
-        return executor.getActiveCount();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getActiveCount();
     }
 
     @Override
     public long getCompletedTaskCount() {
-        return executor.getCompletedTaskCount();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? 0L : current.getCompletedTaskCount();
     }
 
     @Override
     public int getCorePoolSize() {
-        return executor.getCorePoolSize();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? minPoolSize : current.getCorePoolSize();
     }
 
     @Override
     public int getLargestPoolSize() {
-        return executor.getLargestPoolSize();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getLargestPoolSize();
     }
 
     @Override
     public int getMaximumPoolSize() {
-        return executor.getMaximumPoolSize();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? maxPoolSize : current.getMaximumPoolSize();
     }
 
     @Override
     public int getPoolSize() {
-        return executor.getPoolSize();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getPoolSize();
     }
 
     @Override
     public long getTaskCount() {
-        return executor.getTaskCount();
+        final ThreadPoolExecutor current = executor;
+        return current == null ? 0L : current.getTaskCount();
+    }
+    
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.get();
     }
     
     @Override
     public void dispose() throws LifecycleException {
+        synchronized (this) {
+            shutdown = true;
+        }
         try {
-            mBeanService.unregister(this, "name", name);
-        } finally {
-            try {
-                LOG.info("Shutting down {}", this);
-                executor.shutdown();
-                LOG.info("Waiting {} {} for {} to shut down", new Object[] { 
-                    shutdownTimeout, shutdownTimeoutUnit.name().toLowerCase(), this
-                });
-                final boolean terminated = executor.awaitTermination(shutdownTimeout, shutdownTimeoutUnit);
-                if (terminated) {
-                    LOG.info("{} terminated successfully", this);
-                } else {
-                    LOG.warn("{} was forced to shutdown before finish", this);
+            if (executor != null) {
+                mBeanService.unregister(this, "name", name);
+                if (queue instanceof TenantQueue) {
+                    mBeanService.unregister(queue, "name", name);
+                }
+                if (queue instanceof SpillingQueue) {
+                    mBeanService.unregister(queue, "name", name);
+                }
+                if (waitingQueue != null) {
+                    mBeanService.unregister(waitingQueue, "name", name);
+                }
+                if (executor instanceof SheddingThreadPoolExecutor) {
+                    mBeanService.unregister(executor, "name", name);
+                }
+                if (watch != null) {
+                    mBeanService.unregister(watch, "name", name);
+                }
+                if (profiler != null) {
+                    mBeanService.unregister(profiler, "name", name);
+                }
+                if (compensator != null) {
+                    mBeanService.unregister(compensator, "name", name);
                 }
-            } catch (InterruptedException e) {
-                LOG.error("Interrupted while awaiting termination", e);
             }
+        } finally {
+            coordinator.shutdown(this);
+        }
+    }
+    
+    /**
+     * Releases the resources of the pool, called by the {@link ShutdownCoordinator}
+     * once the pool terminated or was forced to.
+     */
+    private void cleanup() {
+        wheel.unregister(this);
+        if (watch != null) {
+            watchdog.unregister(watch);
+        }
+        if (queue instanceof SpillingQueue) {
+            SpillingQueue.class.cast(queue).close();
         }
     }
 
@@ -261,4 +831,90 @@ final class ConfigurableExecutorService implements ExecutorService, Initializabl
         return String.format("ExecutorService [%s]", name);
     }
     
+    /**
+     * A task which is cancelled by the {@link TimeoutWheel} when overdue and
+     * removes its timeout from the wheel once done.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     * @param <T> the generic result type
+     */
+    private final class TimedTask<T> extends CompensatingFuture<T> {
+        
+        private final Runnable expiry = new Runnable() {
+            
+            @Override
+            public void run() {
+                if (cancel(true)) {
+                    timedOut.incrementAndGet();
+                }
+            }
+            
+        };
+        
+        private volatile TimeoutWheel.Timeout timeout;
+        
+        public TimedTask(Callable<T> task) {
+            super(task, compensator(), queue instanceof TenantQueue);
+        }
+        
+        public TimedTask(Runnable task, T result) {
+            super(task, result, compensator(), queue instanceof TenantQueue);
+        }
+        
+        @Override
+        protected void done() {
+            final TimeoutWheel.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+        
+    }
+    
+    /**
+     * Handles rejections of the drainer. The slot of the rejected drainer is released
+     * and all tasks queued in the ring are passed to the configured handler one by one,
+     * as if they had been executed directly. All other tasks are passed unchanged.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private final class DrainerRejection implements RejectedExecutionHandler {
+        
+        private final RejectedExecutionHandler handler;
+        
+        public DrainerRejection(RejectedExecutionHandler handler) {
+            this.handler = handler;
+        }
+        
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            if (task == drainer) {
+                drainers.decrementAndGet();
+                LOG.trace("{} rejected drainer, passing {} queued task(s) to {}", new Object[] {
+                    ConfigurableExecutorService.this, ring.size(), handler
+                });
+                RejectedExecutionException first = null;
+                Runnable next;
+                while ((next = ring.poll()) != null) {
+                    try {
+                        handler.rejectedExecution(next, pool);
+                    } catch (RejectedExecutionException e) {
+                        // every queued task deserves the handler, not just the first one
+                        if (first == null) {
+                            first = e;
+                        }
+                    }
+                }
+                if (first != null) {
+                    throw first;
+                }
+            } else {
+                handler.rejectedExecution(task, pool);
+            }
+        }
+        
+    }
+    
 }
@@ -88,4 +88,13 @@ public interface ConfigurableExecutorServiceMBean {
      */
     long getTaskCount();
     
+    /**
+     * Returns the number of tasks which have been cancelled because they
+     * exceeded their timeout.
+     * 
+     * @since 2.6
+     * @return the number of timed out tasks
+     */
+    long getTimedOutCount();
+    
 }
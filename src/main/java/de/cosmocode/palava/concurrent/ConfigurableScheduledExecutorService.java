@@ -16,11 +16,16 @@
 
 package de.cosmocode.palava.concurrent;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -34,6 +39,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -46,10 +54,26 @@ import de.cosmocode.palava.jmx.MBeanService;
  * A {@link ScheduledExecutorService} which can be configured easily configured
  * using the constructor.
  * 
+ * <p>
+ *   If a {@link GroupingThreadProvider} is bound, its worker threads are accounted to
+ *   the name of this executor. If a {@link ContextPropagator} is bound, all submitted
+ *   tasks carry the context of its registered {@link ContextCarrier}s.
+ * </p>
+ * 
+ * <p>
+ *   Disposing initiates the shutdown of the underlying pool, which is awaited
+ *   within the global deadline of the {@link ShutdownCoordinator}.
+ * </p>
+ * 
+ * <p>
+ *   {@link Job}s scheduled by id are written to a journal if one is configured,
+ *   which is replayed on {@link #initialize()} and compacted periodically.
+ * </p>
+ * 
  * @author Willi Schoenborn
  */
-final class ConfigurableScheduledExecutorService implements ScheduledExecutorService, Initializable, Disposable, 
-    ConfigurableScheduledExecutorServiceMBean {
+final class ConfigurableScheduledExecutorService implements ScheduledExecutorService, JobScheduler, 
+    Initializable, Disposable, ConfigurableScheduledExecutorServiceMBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(ConfigurableScheduledExecutorService.class);
     
@@ -59,16 +83,48 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
     
     private ThreadFactory factory;
     
+    private ThreadProvider provider;
+    
+    private ContextPropagator propagator;
+    
     private RejectedExecutionHandler handler = new ThreadPoolExecutor.AbortPolicy();
     
     private final long shutdownTimeout;
     
     private final TimeUnit shutdownTimeoutUnit;
     
+    private long keepAliveTime = 60;
+    
+    private TimeUnit keepAliveTimeUnit = TimeUnit.SECONDS;
+    
+    private boolean allowCoreThreadTimeout;
+    
+    private File journalFile;
+    
+    private long journalCompactionInterval = 10;
+    
+    private TimeUnit journalCompactionIntervalUnit = TimeUnit.MINUTES;
+    
+    private JobJournal journal;
+    
+    private final Map<String, ScheduledJob> jobs = Maps.newHashMap();
+    
+    private TaskEventSink events;
+    
+    private Set<ExecutorInterceptor> sharedInterceptors = ImmutableSet.of();
+    
+    private Set<ExecutorInterceptor> executorInterceptors = ImmutableSet.of();
+    
+    private InterceptorChain interceptors;
+    
+    private TaskDecorator decorator;
+    
     private ScheduledThreadPoolExecutor executor;
     
     private final MBeanService mBeanService;
     
+    private final ShutdownCoordinator coordinator;
+    
     @Inject
     public ConfigurableScheduledExecutorService(
         @Named(ExecutorConfig.NAME) String name,
@@ -76,7 +132,8 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
         @Named(ExecutorConfig.SHUTDOWN_TIMEOUT) long shutdownTimeout,
         @Named(ExecutorConfig.SHUTDOWN_TIMEOUT_UNIT) TimeUnit shutdownTimeoutUnit,
         ThreadFactory defaultFactory,
-        MBeanService mBeanService) {
+        MBeanService mBeanService,
+        ShutdownCoordinator coordinator) {
         
         this.name = name;
         this.minPoolSize = minPoolSize;
@@ -84,6 +141,22 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
         this.shutdownTimeoutUnit = Preconditions.checkNotNull(shutdownTimeoutUnit, "ShutdownTimeoutUnit");
         this.factory = Preconditions.checkNotNull(defaultFactory, "Factory");
         this.mBeanService = Preconditions.checkNotNull(mBeanService, "MBeanService");
+        this.coordinator = Preconditions.checkNotNull(coordinator, "Coordinator");
+    }
+    
+    @Inject(optional = true)
+    void setFlightRecorder(@Named(ExecutorConfig.FLIGHT_RECORDER) boolean flightRecorder) {
+        this.events = flightRecorder ? TaskEvents.flightRecorder() : null;
+    }
+    
+    @Inject(optional = true)
+    void setInterceptors(Set<ExecutorInterceptor> interceptors) {
+        this.sharedInterceptors = Preconditions.checkNotNull(interceptors, "Interceptors");
+    }
+    
+    @Inject(optional = true)
+    void setExecutorInterceptors(@Named(ExecutorConfig.INTERCEPTORS) Set<ExecutorInterceptor> interceptors) {
+        this.executorInterceptors = Preconditions.checkNotNull(interceptors, "ExecutorInterceptors");
     }
     
     @Inject(optional = true)
@@ -91,18 +164,172 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
         this.factory = Preconditions.checkNotNull(factory, "Factory");
     }
     
+    @Inject(optional = true)
+    void setThreadProvider(ThreadProvider provider) {
+        this.provider = Preconditions.checkNotNull(provider, "Provider");
+    }
+    
+    @Inject(optional = true)
+    void setContextPropagator(ContextPropagator propagator) {
+        this.propagator = Preconditions.checkNotNull(propagator, "Propagator");
+    }
+    
     @Inject(optional = true)
     void setHandler(@Named(ExecutorConfig.REJECTION_HANDLER) RejectedExecutionHandler handler) {
         this.handler = Preconditions.checkNotNull(handler, "Handler");
     }
     
+    @Inject(optional = true)
+    void setKeepAliveTime(@Named(ExecutorConfig.KEEP_ALIVE_TIME) long keepAliveTime) {
+        Preconditions.checkArgument(keepAliveTime > 0, "KeepAliveTime must be positive");
+        this.keepAliveTime = keepAliveTime;
+    }
+    
+    @Inject(optional = true)
+    void setKeepAliveTimeUnit(@Named(ExecutorConfig.KEEP_ALIVE_TIME_UNIT) TimeUnit keepAliveTimeUnit) {
+        this.keepAliveTimeUnit = Preconditions.checkNotNull(keepAliveTimeUnit, "KeepAliveTimeUnit");
+    }
+    
+    @Inject(optional = true)
+    void setAllowCoreThreadTimeout(@Named(ExecutorConfig.ALLOW_CORE_THREAD_TIMEOUT) boolean allowCoreThreadTimeout) {
+        this.allowCoreThreadTimeout = allowCoreThreadTimeout;
+    }
+    
+    @Inject(optional = true)
+    void setJournalFile(@Named(ExecutorConfig.JOURNAL) File journalFile) {
+        this.journalFile = Preconditions.checkNotNull(journalFile, "JournalFile");
+    }
+    
+    @Inject(optional = true)
+    void setJournalCompactionInterval(@Named(ExecutorConfig.JOURNAL_COMPACTION_INTERVAL) long interval) {
+        Preconditions.checkArgument(interval > 0, "JournalCompactionInterval must be positive");
+        this.journalCompactionInterval = interval;
+    }
+    
+    @Inject(optional = true)
+    void setJournalCompactionIntervalUnit(@Named(ExecutorConfig.JOURNAL_COMPACTION_INTERVAL_UNIT) TimeUnit unit) {
+        this.journalCompactionIntervalUnit = Preconditions.checkNotNull(unit, "JournalCompactionIntervalUnit");
+    }
+    
     @Override
     public void initialize() throws LifecycleException {
+        this.interceptors = InterceptorChain.of(name, Sets.union(sharedInterceptors, executorInterceptors));
+        this.decorator = new TaskDecorator(name, null, interceptors, propagator, events);
         this.executor = new ScheduledThreadPoolExecutor(
-            minPoolSize, factory, handler
+            minPoolSize, ThreadProviders.threadFactory(provider, factory, name),
+            events == null ? handler : TaskEvents.trace(events, name, handler)
         );
+        
+        if (allowCoreThreadTimeout) {
+            executor.setKeepAliveTime(keepAliveTime, keepAliveTimeUnit);
+            executor.allowCoreThreadTimeOut(true);
+        }
 
+        coordinator.register(this, executor, shutdownTimeout, shutdownTimeoutUnit, new Runnable() {
+            
+            @Override
+            public void run() {
+                cleanup();
+            }
+            
+        });
         mBeanService.register(this, "name", name);
+        
+        if (journalFile != null) {
+            journal = new JobJournal(journalFile);
+            replay();
+            executor.scheduleWithFixedDelay(new Runnable() {
+                
+                @Override
+                public void run() {
+                    try {
+                        journal.compact();
+                    } catch (IOException e) {
+                        LOG.error("Unable to compact " + journal, e);
+                    }
+                }
+                
+            }, journalCompactionInterval, journalCompactionInterval, journalCompactionIntervalUnit);
+        }
+    }
+    
+    private void replay() throws LifecycleException {
+        final Map<String, JobJournal.Entry> entries;
+        try {
+            entries = journal.replay();
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+        final long now = System.currentTimeMillis();
+        synchronized (jobs) {
+            for (JobJournal.Entry entry : entries.values()) {
+                final Job job;
+                try {
+                    job = entry.getJob();
+                } catch (IOException e) {
+                    LOG.error("Unable to restore job " + entry.getId() + ", dropping it", e);
+                    remove(entry.getId());
+                    continue;
+                } catch (ClassNotFoundException e) {
+                    LOG.error("Unable to restore job " + entry.getId() + ", dropping it", e);
+                    remove(entry.getId());
+                    continue;
+                }
+                final ScheduledJob scheduled = new ScheduledJob(entry.getId(), job);
+                scheduled.future = executor.schedule(scheduled, Math.max(0L, entry.getDue() - now), 
+                    TimeUnit.MILLISECONDS);
+                jobs.put(entry.getId(), scheduled);
+            }
+        }
+        LOG.info("Rescheduled {} journaled job(s) on {}", entries.size(), this);
+    }
+    
+    private void remove(String id) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.removed(id);
+        } catch (IOException e) {
+            LOG.error("Unable to journal removal of job " + id, e);
+        }
+    }
+    
+    @Override
+    public ScheduledFuture<?> schedule(String id, Job job, long delay, TimeUnit unit) {
+        Preconditions.checkNotNull(id, "Id");
+        Preconditions.checkNotNull(job, "Job");
+        final long due = System.currentTimeMillis() + unit.toMillis(delay);
+        final ScheduledJob scheduled = new ScheduledJob(id, job);
+        synchronized (jobs) {
+            if (journal != null) {
+                try {
+                    journal.scheduled(id, due, job);
+                } catch (IOException e) {
+                    throw new RejectedExecutionException("Unable to journal job " + id, e);
+                }
+            }
+            scheduled.future = executor.schedule(scheduled, delay, unit);
+            final ScheduledJob previous = jobs.put(id, scheduled);
+            if (previous != null) {
+                previous.future.cancel(false);
+            }
+        }
+        return scheduled.future;
+    }
+    
+    @Override
+    public boolean cancel(String id) {
+        Preconditions.checkNotNull(id, "Id");
+        synchronized (jobs) {
+            final ScheduledJob scheduled = jobs.remove(id);
+            if (scheduled == null) {
+                return false;
+            }
+            scheduled.future.cancel(false);
+            remove(id);
+            return true;
+        }
     }
     
     @Override
@@ -112,29 +339,29 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
 
     @Override
     public void execute(Runnable command) {
-        executor.execute(command);
+        executor.execute(decorator.decorate(command, 0L));
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
         throws InterruptedException {
-        return executor.invokeAll(tasks, timeout, unit);
+        return executor.invokeAll(decorator.decorate(tasks), timeout, unit);
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        return executor.invokeAll(tasks);
+        return executor.invokeAll(decorator.decorate(tasks));
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
         throws InterruptedException, ExecutionException, TimeoutException {
-        return executor.invokeAny(tasks, timeout, unit);
+        return executor.invokeAny(decorator.decorate(tasks), timeout, unit);
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        return executor.invokeAny(tasks);
+        return executor.invokeAny(decorator.decorate(tasks));
     }
 
     @Override
@@ -149,22 +376,24 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
 
     @Override
     public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
-        return executor.schedule(callable, delay, unit);
+        return executor.schedule(decorator.decorate(callable, unit.toNanos(delay)), delay, unit);
     }
 
     @Override
     public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
-        return executor.schedule(command, delay, unit);
+        return executor.schedule(decorator.decorate(command, unit.toNanos(delay)), delay, unit);
     }
 
     @Override
     public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
-        return executor.scheduleAtFixedRate(command, initialDelay, period, unit);
+        return executor.scheduleAtFixedRate(decorator.decorate(command, unit.toNanos(initialDelay)), 
+            initialDelay, period, unit);
     }
 
     @Override
     public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
-        return executor.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        return executor.scheduleWithFixedDelay(decorator.decorate(command, unit.toNanos(initialDelay)), 
+            initialDelay, delay, unit);
     }
 
     @Override
@@ -179,17 +408,17 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return executor.submit(task);
+        return executor.submit(decorator.decorate(task, 0L));
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return executor.submit(task, result);
+        return executor.submit(decorator.decorate(task, 0L), result);
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return executor.submit(task);
+        return executor.submit(decorator.decorate(task, 0L));
     }
 
     @Override
@@ -232,25 +461,32 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
         return executor.getTaskCount();
     }
 
+    @Override
+    public int getJobCount() {
+        synchronized (jobs) {
+            return jobs.size();
+        }
+    }
+
     @Override
     public void dispose() throws LifecycleException {
         try {
             mBeanService.unregister(this, "name", name);
         } finally {
+            coordinator.shutdown(this);
+        }
+    }
+    
+    /**
+     * Closes the journal, called by the {@link ShutdownCoordinator} once the pool
+     * terminated or was forced to, so jobs still running can remove themselves.
+     */
+    private void cleanup() {
+        if (journal != null) {
             try {
-                LOG.info("Shutting down {}", this);
-                executor.shutdown();
-                LOG.info("Waiting {} {} for {} to shut down", new Object[] {
-                    shutdownTimeout, shutdownTimeoutUnit.name().toLowerCase(), this
-                });
-                final boolean terminated = executor.awaitTermination(shutdownTimeout, shutdownTimeoutUnit);
-                if (terminated) {
-                    LOG.info("{} terminated successfully", this);
-                } else {
-                    LOG.warn("{} was forced to shutdown before finish", this);
-                }
-            } catch (InterruptedException e) {
-                LOG.error("Interrupted while awaiting termination", e);
+                journal.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close " + journal, e);
             }
         }
     }
@@ -260,4 +496,44 @@ final class ConfigurableScheduledExecutorService implements ScheduledExecutorSer
         return String.format("ScheduledExecutorService [%s]", name);
     }
     
+    /**
+     * A job scheduled by id, which removes itself from the journal once it ran.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private final class ScheduledJob implements Runnable {
+        
+        private final String id;
+        
+        private final Job job;
+        
+        private ScheduledFuture<?> future;
+        
+        public ScheduledJob(String id, Job job) {
+            this.id = id;
+            this.job = job;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                job.run();
+            } finally {
+                synchronized (jobs) {
+                    if (jobs.get(id) == this) {
+                        jobs.remove(id);
+                        remove(id);
+                    }
+                }
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("Job [%s: %s]", id, job);
+        }
+        
+    }
+    
 }
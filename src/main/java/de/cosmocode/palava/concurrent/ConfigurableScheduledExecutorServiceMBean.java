@@ -88,4 +88,12 @@ public interface ConfigurableScheduledExecutorServiceMBean {
      */
     long getTaskCount();
     
+    /**
+     * Returns the number of pending jobs scheduled by id.
+     * 
+     * @since 2.6
+     * @return the number of pending jobs
+     */
+    int getJobCount();
+    
 }
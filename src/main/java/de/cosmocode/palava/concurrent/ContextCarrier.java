@@ -0,0 +1,60 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * A context carrier transports thread bound context, e.g. logging or security
+ * context, from the thread submitting a task to the thread executing it.
+ * 
+ * <p>
+ *   {@link #capture()} is called in the submitting thread, {@link #attach(Object)}
+ *   and {@link #detach(Object)} are called in the executing thread, right before
+ *   and after running the task.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @param <C> the generic context type
+ * @see ContextPropagator#addContextCarrier(ContextCarrier)
+ */
+public interface ContextCarrier<C> {
+
+    /**
+     * Captures the context of the current thread. Implementations should
+     * return immutable values, because the captured context may be attached
+     * to multiple threads at once.
+     * 
+     * @return the current context, may be null
+     */
+    C capture();
+    
+    /**
+     * Attaches the given context to the current thread.
+     * 
+     * @param context the previously captured context
+     * @return the context of the current thread before attaching, used to restore it
+     */
+    C attach(C context);
+    
+    /**
+     * Restores the context of the current thread to the given value.
+     * 
+     * @param previous the value returned by {@link #attach(Object)}
+     */
+    void detach(C previous);
+    
+}
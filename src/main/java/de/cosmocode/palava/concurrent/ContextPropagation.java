@@ -0,0 +1,210 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Captures the context of all registered {@link ContextCarrier}s into compact,
+ * immutable snapshots and restores them around task execution.
+ * Wrapping is a no-op if no carriers are registered. Wrapped {@link Comparable}
+ * runnables stay comparable, so they can still be queued by priority.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class ContextPropagation {
+
+    private static final ContextCarrier<?>[] NONE = new ContextCarrier<?>[0];
+    
+    private volatile ContextCarrier<?>[] carriers = NONE;
+    
+    /**
+     * Adds the given carrier.
+     * 
+     * @param carrier the new carrier
+     * @throws NullPointerException if carrier is null
+     */
+    public synchronized void add(ContextCarrier<?> carrier) {
+        Preconditions.checkNotNull(carrier, "Carrier");
+        final ContextCarrier<?>[] current = carriers;
+        final ContextCarrier<?>[] next = new ContextCarrier<?>[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = carrier;
+        carriers = next;
+    }
+    
+    /**
+     * Wraps the given task so it runs with the context of the current thread.
+     * 
+     * @param task the task
+     * @return the wrapped task or task itself if no carriers are registered
+     */
+    public Runnable wrap(final Runnable task) {
+        final ContextCarrier<?>[] current = carriers;
+        if (current.length == 0) {
+            return task;
+        }
+        Preconditions.checkNotNull(task, "Task");
+        final Snapshot snapshot = new Snapshot(current);
+        if (task instanceof Comparable<?>) {
+            return new ComparablePropagatingRunnable(task, snapshot);
+        } else {
+            return new PropagatingRunnable(task, snapshot);
+        }
+    }
+    
+    /**
+     * Wraps the given task so it runs with the context of the current thread.
+     * 
+     * @param <V> the generic result type
+     * @param task the task
+     * @return the wrapped task or task itself if no carriers are registered
+     */
+    public <V> Callable<V> wrap(final Callable<V> task) {
+        final ContextCarrier<?>[] current = carriers;
+        if (current.length == 0) {
+            return task;
+        }
+        Preconditions.checkNotNull(task, "Task");
+        final Snapshot snapshot = new Snapshot(current);
+        return new Callable<V>() {
+            
+            @Override
+            public V call() throws Exception {
+                final Object[] previous = snapshot.attach();
+                try {
+                    return task.call();
+                } finally {
+                    snapshot.detach(previous, previous.length);
+                }
+            }
+            
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+            
+        };
+    }
+    
+    /**
+     * Immutable snapshot of all contexts captured at submit time.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Snapshot {
+        
+        private final ContextCarrier<?>[] carriers;
+        
+        private final Object[] contexts;
+        
+        public Snapshot(ContextCarrier<?>[] carriers) {
+            this.carriers = carriers;
+            this.contexts = new Object[carriers.length];
+            for (int i = 0; i < carriers.length; i++) {
+                contexts[i] = carriers[i].capture();
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        public Object[] attach() {
+            final Object[] previous = new Object[carriers.length];
+            int attached = 0;
+            try {
+                for (; attached < carriers.length; attached++) {
+                    previous[attached] = ((ContextCarrier<Object>) carriers[attached]).attach(contexts[attached]);
+                }
+                return previous;
+            } finally {
+                if (attached < carriers.length) {
+                    // a carrier failed, the worker must not keep the contexts attached so far
+                    detach(previous, attached);
+                }
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        public void detach(Object[] previous, int attached) {
+            // restore in reverse order
+            for (int i = attached - 1; i >= 0; i--) {
+                ((ContextCarrier<Object>) carriers[i]).detach(previous[i]);
+            }
+        }
+        
+    }
+    
+    /**
+     * A runnable which runs its task with the contexts of a snapshot.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static class PropagatingRunnable implements Runnable {
+        
+        private final Runnable task;
+        
+        private final Snapshot snapshot;
+        
+        public PropagatingRunnable(Runnable task, Snapshot snapshot) {
+            this.task = task;
+            this.snapshot = snapshot;
+        }
+        
+        @Override
+        public void run() {
+            final Object[] previous = snapshot.attach();
+            try {
+                task.run();
+            } finally {
+                snapshot.detach(previous, previous.length);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+        
+    }
+    
+    /**
+     * A {@link PropagatingRunnable} which compares by its comparable task.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class ComparablePropagatingRunnable extends PropagatingRunnable
+        implements Comparable<Object> {
+        
+        public ComparablePropagatingRunnable(Runnable task, Snapshot snapshot) {
+            super(task, snapshot);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compareTo(Object that) {
+            final Object other = that instanceof PropagatingRunnable ? PropagatingRunnable.class.cast(that).task : that;
+            return Comparable.class.cast(super.task).compareTo(other);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Propagates the context of registered {@link ContextCarrier}s from submitting to
+ * executing threads. All configurable executors wrap their tasks using the bound
+ * propagator, if any. Propagation is a no-op as long as no carrier is registered.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface ContextPropagator {
+
+    /**
+     * Registers a carrier whose context will be propagated from submitting to
+     * executing threads by all tasks wrapped using {@link #propagate(Runnable)} or
+     * {@link #propagate(Callable)}, which includes all tasks submitted to executors
+     * configured by {@link ExecutorModule} and {@link SchedulerModule}.
+     * 
+     * @param carrier the carrier
+     * @throws NullPointerException if carrier is null
+     */
+    void addContextCarrier(ContextCarrier<?> carrier);
+    
+    /**
+     * Captures the context of all registered carriers and returns a task
+     * which runs the given task with the captured context.
+     * 
+     * @param task the task
+     * @return the decorated task or task itself if there are no carriers
+     */
+    Runnable propagate(Runnable task);
+    
+    /**
+     * Captures the context of all registered carriers and returns a task
+     * which runs the given task with the captured context.
+     * 
+     * @param <V> the generic result type
+     * @param task the task
+     * @return the decorated task or task itself if there are no carriers
+     */
+    <V> Callable<V> propagate(Callable<V> task);
+
+}
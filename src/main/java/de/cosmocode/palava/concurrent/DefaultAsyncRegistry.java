@@ -16,35 +16,137 @@
 
 package de.cosmocode.palava.concurrent;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import de.cosmocode.collections.Procedure;
-import de.cosmocode.palava.core.ForwardingRegistry;
 import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.jmx.MBeanService;
 
 /**
  * Default implementation of the {@link AsyncRegistry} interface.
+ * 
+ * <p>
+ *   Listeners are cached per {@link Key} as immutable copy-on-write snapshots.
+ *   A snapshot is created lazily by the first notification for a key and
+ *   dropped whenever listeners for that key get registered or removed using this
+ *   registry, so notifications neither look up nor copy listeners. Listeners which
+ *   are registered at the underlying registry directly are therefore only notified
+ *   once the snapshot of their key has been dropped.
+ * </p>
+ * 
+ * <p>
+ *   Every listener may be limited to a maximum number of concurrently running
+ *   notifications using {@link AsyncRegistryConfig#MAX_IN_FLIGHT}. Limited listeners
+ *   get their own {@link Bulkhead}, which makes sure that a slow listener can't
+ *   occupy all threads of the underlying executor.
+ * </p>
+ * 
+ * <p>
+ *   Invocation counts, failures and run times are recorded per key and listener
+ *   and published using the {@link DefaultAsyncRegistryMBean} interface. Statistics
+ *   of removed listeners are evicted when they are removed or the snapshot of their
+ *   key is created again.
+ * </p>
  *
  * @author Willi Schoenborn
  */
-final class DefaultAsyncRegistry extends ForwardingRegistry implements AsyncRegistry {
+final class DefaultAsyncRegistry extends AbstractAsyncRegistry implements AsyncRegistry, Initializable, Disposable,
+    DefaultAsyncRegistryMBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultAsyncRegistry.class);
     
+    private static final int DEFAULT_SLOWEST = 10;
+    
+    private static final Comparator<ListenerStatistics> SLOWEST_FIRST = new Comparator<ListenerStatistics>() {
+        
+        @Override
+        public int compare(ListenerStatistics left, ListenerStatistics right) {
+            final long l = left.getMeanMicros();
+            final long r = right.getMeanMicros();
+            return l < r ? 1 : l == r ? 0 : -1;
+        }
+        
+    };
+    
     private final Registry registry;
     
     private final ExecutorService executor;
     
+    private final ConcurrentMap<Key<?>, Snapshot> snapshots = new MapMaker().makeMap();
+    
+    private final Map<Object, Executor> bulkheads = new MapMaker().weakKeys().makeMap();
+    
+    private final Map<Class<?>, Executor> isolated = new MapMaker().makeMap();
+    
+    private final ConcurrentMap<Key<?>, Map<Object, ListenerStatistics>> statistics = new MapMaker().makeMap();
+    
+    private final MBeanService mBeanService;
+    
+    private int maxInFlight = Integer.MAX_VALUE;
+    
+    private OverflowPolicy overflowPolicy = OverflowPolicy.QUEUE;
+    
+    private int maxQueued = 1024;
+    
+    private TaskEventSink events;
+    
     @Inject
-    public DefaultAsyncRegistry(Registry registry, @BackgroundNotifier ExecutorService executor) {
+    public DefaultAsyncRegistry(Registry registry, @BackgroundNotifier ExecutorService executor,
+        MBeanService mBeanService) {
         this.registry = Preconditions.checkNotNull(registry, "Registry");
         this.executor = Preconditions.checkNotNull(executor, "Executor");
+        this.mBeanService = Preconditions.checkNotNull(mBeanService, "MBeanService");
+    }
+
+    @Inject(optional = true)
+    void setMaxInFlight(@Named(AsyncRegistryConfig.MAX_IN_FLIGHT) int maxInFlight) {
+        Preconditions.checkArgument(maxInFlight > 0, "MaxInFlight must be positive, but was %s", maxInFlight);
+        this.maxInFlight = maxInFlight;
+    }
+    
+    @Inject(optional = true)
+    void setOverflowPolicy(@Named(AsyncRegistryConfig.OVERFLOW_POLICY) OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy, "OverflowPolicy");
+    }
+    
+    @Inject(optional = true)
+    void setMaxQueued(@Named(AsyncRegistryConfig.MAX_QUEUED) int maxQueued) {
+        Preconditions.checkArgument(maxQueued >= 0, "MaxQueued must not be negative, but was %s", maxQueued);
+        this.maxQueued = maxQueued;
+    }
+    
+    @Inject(optional = true)
+    void setFlightRecorder(@Named(ExecutorConfig.FLIGHT_RECORDER) boolean flightRecorder) {
+        this.events = flightRecorder ? TaskEvents.flightRecorder() : null;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        mBeanService.register(this, "name", "async");
     }
 
     @Override
@@ -53,24 +155,223 @@ final class DefaultAsyncRegistry extends ForwardingRegistry implements AsyncRegi
     }
     
     @Override
-    public <T> void notifyAsync(Class<T> type, Procedure<? super T> command) {
-        notifyAsync(Key.get(type), command);
+    public <T> void register(Class<T> type, T listener) {
+        register(Key.get(type), listener);
+    }
+    
+    @Override
+    public <T> void register(Key<T> key, T listener) {
+        synchronized (snapshots) {
+            super.register(key, listener);
+            snapshots.remove(key);
+        }
+    }
+    
+    @Override
+    public <T> void remove(Class<T> type, T listener) {
+        remove(Key.get(type), listener);
+    }
+    
+    @Override
+    public <T> void remove(Key<T> key, T listener) {
+        synchronized (snapshots) {
+            super.remove(key, listener);
+            snapshots.remove(key);
+            evictStatistics(key, getListeners(key));
+        }
+    }
+    
+    @Override
+    public <T> void remove(T listener) {
+        synchronized (snapshots) {
+            super.remove(listener);
+            snapshots.clear();
+            final Iterator<Map<Object, ListenerStatistics>> iterator = statistics.values().iterator();
+            while (iterator.hasNext()) {
+                final Map<Object, ListenerStatistics> map = iterator.next();
+                map.remove(listener);
+                if (map.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+    
+    @Override
+    public <T> void removeIf(Class<T> type, Predicate<? super T> predicate) {
+        removeIf(Key.get(type), predicate);
+    }
+    
+    @Override
+    public <T> void removeIf(Key<T> key, Predicate<? super T> predicate) {
+        synchronized (snapshots) {
+            super.removeIf(key, predicate);
+            snapshots.remove(key);
+            evictStatistics(key, getListeners(key));
+        }
+    }
+    
+    @Override
+    public void isolate(Class<?> listenerType, Executor dedicated) {
+        Preconditions.checkNotNull(listenerType, "ListenerType");
+        Preconditions.checkNotNull(dedicated, "Executor");
+        synchronized (snapshots) {
+            isolated.put(listenerType, dedicated);
+            // existing bulkheads may have notifications in flight and must keep counting them
+            for (Map.Entry<Object, Executor> entry : bulkheads.entrySet()) {
+                if (!listenerType.isInstance(entry.getKey())) {
+                    continue;
+                } else if (entry.getValue() instanceof Bulkhead) {
+                    Bulkhead.class.cast(entry.getValue()).setExecutor(dedicated);
+                } else {
+                    bulkheads.put(entry.getKey(), dedicated);
+                }
+            }
+            snapshots.clear();
+        }
+    }
+    
+    /**
+     * Returns the current listener snapshot for the given key.
+     * 
+     * @param key the binding key
+     * @return an immutable snapshot of all listeners for key
+     */
+    private Snapshot snapshotOf(Key<?> key) {
+        final Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null) {
+            synchronized (snapshots) {
+                final Snapshot current = snapshots.get(key);
+                if (current == null) {
+                    final Object[] listeners = Iterables.toArray(getListeners(key), Object.class);
+                    final Executor[] executors = new Executor[listeners.length];
+                    final ListenerStatistics[] stats = new ListenerStatistics[listeners.length];
+                    for (int i = 0; i < listeners.length; i++) {
+                        executors[i] = executorOf(listeners[i]);
+                        stats[i] = statisticsOf(key, listeners[i]);
+                    }
+                    evictStatistics(key, Arrays.asList(listeners));
+                    final Snapshot created = new Snapshot(listeners, executors, stats);
+                    LOG.trace("Created listener snapshot of size {} for {}", listeners.length, key);
+                    snapshots.put(key, created);
+                    return created;
+                } else {
+                    return current;
+                }
+            }
+        } else {
+            return snapshot;
+        }
+    }
+    
+    /**
+     * Returns the executor used to notify the given listener. Must
+     * be called while holding the snapshots lock.
+     * 
+     * @param listener the listener
+     * @return the executor responsible for listener
+     */
+    private Executor executorOf(Object listener) {
+        final Executor existing = bulkheads.get(listener);
+        if (existing == null) {
+            Executor target = executor;
+            for (Map.Entry<Class<?>, Executor> entry : isolated.entrySet()) {
+                if (entry.getKey().isInstance(listener)) {
+                    target = entry.getValue();
+                    break;
+                }
+            }
+            final Executor created;
+            if (maxInFlight == Integer.MAX_VALUE) {
+                created = target;
+            } else {
+                created = new Bulkhead(listener.toString(), target, maxInFlight, maxQueued, overflowPolicy);
+            }
+            bulkheads.put(listener, created);
+            return created;
+        } else {
+            return existing;
+        }
+    }
+
+    /**
+     * Returns the statistics of the given listener for the given key. Must
+     * be called while holding the snapshots lock.
+     * 
+     * @param key the binding key
+     * @param listener the listener
+     * @return the statistics of listener for key
+     */
+    private ListenerStatistics statisticsOf(Key<?> key, Object listener) {
+        Map<Object, ListenerStatistics> map = statistics.get(key);
+        if (map == null) {
+            map = new MapMaker().weakKeys().makeMap();
+            statistics.put(key, map);
+        }
+        final ListenerStatistics existing = map.get(listener);
+        if (existing == null) {
+            final ListenerStatistics created = new ListenerStatistics(listener);
+            map.put(listener, created);
+            return created;
+        } else {
+            return existing;
+        }
+    }
+
+    /**
+     * Evicts the statistics of all listeners for the given key which are no longer
+     * registered. Must be called while holding the snapshots lock.
+     * 
+     * @param key the binding key
+     * @param registered the currently registered listeners
+     */
+    private void evictStatistics(Key<?> key, Iterable<?> registered) {
+        final Map<Object, ListenerStatistics> map = statistics.get(key);
+        if (map == null) {
+            return;
+        }
+        final Set<Object> current = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        Iterables.addAll(current, registered);
+        map.keySet().retainAll(current);
+        if (map.isEmpty()) {
+            statistics.remove(key);
+        }
     }
 
     @Override
     public <T> void notifyAsync(final Key<T> key, final Procedure<? super T> command) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(command, "Command");
         executor.execute(new Runnable() {
             
             @Override
             public void run() {
                 LOG.trace("notifying all listeners for {} concurrently using {}", key, command);
-                for (final T listener : getListeners(key)) {
-                    executor.execute(new Runnable() {
+                final Snapshot snapshot = snapshotOf(key);
+                for (int i = 0; i < snapshot.listeners.length; i++) {
+                    @SuppressWarnings("unchecked")
+                    final T typed = (T) snapshot.listeners[i];
+                    final ListenerStatistics stats = snapshot.statistics[i];
+                    final TaskEventSink sink = events;
+                    final long dispatched = System.nanoTime();
+                    snapshot.executors[i].execute(new Runnable() {
                         
                         @Override
                         public void run() {
-                            LOG.trace("notifying {} for {} concurrently", listener, key);
-                            command.apply(listener);
+                            LOG.trace("notifying {} for {} concurrently", typed, key);
+                            final long start = System.nanoTime();
+                            final Object handle = sink == null ? 
+                                null : sink.notifying(key.toString(), typed.getClass(), start - dispatched);
+                            boolean failed = true;
+                            try {
+                                command.apply(typed);
+                                failed = false;
+                            } finally {
+                                stats.record(System.nanoTime() - start, failed);
+                                if (sink != null) {
+                                    sink.notified(handle, failed);
+                                }
+                            }
                         }
                         
                     });
@@ -79,5 +380,82 @@ final class DefaultAsyncRegistry extends ForwardingRegistry implements AsyncRegi
             
         });
     }
+    
+    @Override
+    public long getInvocationCount() {
+        long count = 0;
+        for (Map<Object, ListenerStatistics> map : statistics.values()) {
+            for (ListenerStatistics stats : map.values()) {
+                count += stats.getInvocations();
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public long getFailureCount() {
+        long count = 0;
+        for (Map<Object, ListenerStatistics> map : statistics.values()) {
+            for (ListenerStatistics stats : map.values()) {
+                count += stats.getFailures();
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public String[] getSlowestListeners() {
+        return slowestListeners(DEFAULT_SLOWEST);
+    }
+    
+    @Override
+    public String[] slowestListeners(int n) {
+        final List<String> lines = Lists.newArrayList();
+        for (Map.Entry<Key<?>, Map<Object, ListenerStatistics>> entry : statistics.entrySet()) {
+            final List<ListenerStatistics> all = Lists.newArrayList(entry.getValue().values());
+            Collections.sort(all, SLOWEST_FIRST);
+            for (ListenerStatistics stats : all.subList(0, Math.min(n, all.size()))) {
+                lines.add(entry.getKey() + " " + stats);
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+    
+    @Override
+    public void resetStatistics() {
+        for (Map<Object, ListenerStatistics> map : statistics.values()) {
+            for (ListenerStatistics stats : map.values()) {
+                stats.reset();
+            }
+        }
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        mBeanService.unregister(this, "name", "async");
+    }
+    
+    /**
+     * Immutable listener snapshot of one key with the executor and
+     * statistics of every listener at the same index.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Snapshot {
+        
+        private final Object[] listeners;
+        
+        private final Executor[] executors;
+        
+        private final ListenerStatistics[] statistics;
+        
+        public Snapshot(Object[] listeners, Executor[] executors, ListenerStatistics[] statistics) {
+            this.listeners = listeners;
+            this.executors = executors;
+            this.statistics = statistics;
+        }
+        
+    }
 
 }
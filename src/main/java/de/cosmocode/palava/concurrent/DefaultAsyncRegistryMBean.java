@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link DefaultAsyncRegistry}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface DefaultAsyncRegistryMBean {
+
+    /**
+     * Returns the total number of asynchronous listener invocations.
+     * 
+     * @return the number of invocations
+     */
+    long getInvocationCount();
+    
+    /**
+     * Returns the total number of asynchronous listener invocations
+     * which failed with an exception.
+     * 
+     * @return the number of failures
+     */
+    long getFailureCount();
+    
+    /**
+     * Returns the ten slowest listeners of every key, ordered by mean run time.
+     * 
+     * @return a human readable description of the slowest listeners
+     */
+    String[] getSlowestListeners();
+    
+    /**
+     * Returns the n slowest listeners of every key, ordered by mean run time.
+     * 
+     * @param n the maximum number of listeners per key
+     * @return a human readable description of the slowest listeners
+     */
+    String[] slowestListeners(int n);
+    
+    /**
+     * Resets all collected statistics.
+     */
+    void resetStatistics();
+    
+}
@@ -0,0 +1,598 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.collections.Procedure;
+import de.cosmocode.palava.core.Registry;
+
+/**
+ * Default implementation of the {@link DemandRegistry} interface.
+ * 
+ * <p>
+ *   Every listener gets a bounded inbox per key. Inboxes are drained on the
+ *   {@link BackgroundNotifier} executor, one notification at a time per inbox,
+ *   and only as long as the listener has outstanding demand.
+ *   {@link #notifyAsync(Key, Procedure)} uses the same inboxes. It waits for listeners
+ *   using {@link DropPolicy#BLOCK} up to {@link AsyncRegistryConfig#BLOCK_TIMEOUT} for all
+ *   of them together and drops the notification for listeners which are still behind,
+ *   logging a warning for the first drop. This keeps memory bounded even for publishers
+ *   which are not aware of backpressure, without letting a listener which never requests
+ *   anything block its publishers forever.
+ * </p>
+ * 
+ * <p>
+ *   Listeners using {@link DropPolicy#FAIL} are checked for free space before the
+ *   notification is buffered for any listener, so a rejected notification isn't
+ *   delivered to some listeners only.
+ * </p>
+ * 
+ * <p>
+ *   The inboxes of all listeners of a key are cached and dropped whenever listeners
+ *   for that key get registered or removed using this registry or an inbox gets
+ *   cancelled, so notifications don't look up listeners. Listeners registered at the
+ *   underlying registry directly are picked up once the inboxes of their key are dropped.
+ *   Inboxes of removed listeners are cancelled, cancelled inboxes don't receive any
+ *   further notifications.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class DefaultDemandRegistry extends AbstractAsyncRegistry implements DemandRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultDemandRegistry.class);
+    
+    private final Registry registry;
+    
+    private final ExecutorService executor;
+    
+    private final ConcurrentMap<Key<?>, Inbox[]> channels = new MapMaker().makeMap();
+    
+    private final ConcurrentMap<Key<?>, Map<Object, Inbox>> inboxes = new MapMaker().makeMap();
+    
+    private final ConcurrentMap<Key<?>, Settings> settings = new MapMaker().makeMap();
+    
+    private final Map<Class<?>, Executor> isolated = new MapMaker().makeMap();
+    
+    private Settings defaults = new Settings(1024, DropPolicy.BLOCK);
+    
+    private long blockTimeout = 1L;
+    
+    private TimeUnit blockTimeoutUnit = TimeUnit.SECONDS;
+    
+    private final AtomicLong dropped = new AtomicLong();
+    
+    @Inject
+    public DefaultDemandRegistry(Registry registry, @BackgroundNotifier ExecutorService executor) {
+        this.registry = Preconditions.checkNotNull(registry, "Registry");
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+    }
+    
+    @Inject(optional = true)
+    void setBufferSize(@Named(AsyncRegistryConfig.BUFFER_SIZE) int bufferSize) {
+        this.defaults = new Settings(bufferSize, defaults.policy);
+    }
+    
+    @Inject(optional = true)
+    void setDropPolicy(@Named(AsyncRegistryConfig.DROP_POLICY) DropPolicy dropPolicy) {
+        this.defaults = new Settings(defaults.capacity, dropPolicy);
+    }
+    
+    @Inject(optional = true)
+    void setBlockTimeout(@Named(AsyncRegistryConfig.BLOCK_TIMEOUT) long blockTimeout) {
+        Preconditions.checkArgument(blockTimeout >= 0, "BlockTimeout must not be negative, but was %s", blockTimeout);
+        this.blockTimeout = blockTimeout;
+    }
+    
+    @Inject(optional = true)
+    void setBlockTimeoutUnit(@Named(AsyncRegistryConfig.BLOCK_TIMEOUT_UNIT) TimeUnit blockTimeoutUnit) {
+        this.blockTimeoutUnit = Preconditions.checkNotNull(blockTimeoutUnit, "BlockTimeoutUnit");
+    }
+
+    @Override
+    protected Registry delegate() {
+        return registry;
+    }
+    
+    @Override
+    public <T> void register(Class<T> type, T listener) {
+        register(Key.get(type), listener);
+    }
+    
+    @Override
+    public <T> void register(Key<T> key, T listener) {
+        synchronized (channels) {
+            super.register(key, listener);
+            channels.remove(key);
+        }
+    }
+    
+    @Override
+    public <T> void remove(Class<T> type, T listener) {
+        remove(Key.get(type), listener);
+    }
+    
+    @Override
+    public <T> void remove(Key<T> key, T listener) {
+        synchronized (channels) {
+            super.remove(key, listener);
+            channels.remove(key);
+        }
+    }
+    
+    @Override
+    public <T> void remove(T listener) {
+        synchronized (channels) {
+            super.remove(listener);
+            channels.clear();
+        }
+    }
+    
+    @Override
+    public <T> void removeIf(Class<T> type, Predicate<? super T> predicate) {
+        removeIf(Key.get(type), predicate);
+    }
+    
+    @Override
+    public <T> void removeIf(Key<T> key, Predicate<? super T> predicate) {
+        synchronized (channels) {
+            super.removeIf(key, predicate);
+            channels.remove(key);
+        }
+    }
+    
+    @Override
+    public void isolate(Class<?> listenerType, Executor dedicated) {
+        Preconditions.checkNotNull(listenerType, "ListenerType");
+        Preconditions.checkNotNull(dedicated, "Executor");
+        synchronized (channels) {
+            isolated.put(listenerType, dedicated);
+            // existing inboxes keep their buffers and subscriptions
+            for (Map<Object, Inbox> map : inboxes.values()) {
+                for (Inbox inbox : map.values()) {
+                    if (listenerType.isInstance(inbox.listener)) {
+                        inbox.setExecutor(dedicated);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    public <T> void configure(Key<T> key, int bufferSize, DropPolicy policy) {
+        Preconditions.checkNotNull(key, "Key");
+        final Settings configured = new Settings(bufferSize, policy);
+        synchronized (channels) {
+            settings.put(key, configured);
+            final Map<Object, Inbox> existing = inboxes.get(key);
+            if (existing != null) {
+                for (Inbox inbox : existing.values()) {
+                    inbox.configure(configured);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the inboxes of all listeners for the given key.
+     * 
+     * @param key the binding key
+     * @return an immutable array of inboxes
+     */
+    private Inbox[] channelOf(Key<?> key) {
+        final Inbox[] channel = channels.get(key);
+        if (channel == null) {
+            synchronized (channels) {
+                final Inbox[] current = channels.get(key);
+                if (current == null) {
+                    final Inbox[] created = createChannel(key, Iterables.toArray(getListeners(key), Object.class));
+                    channels.put(key, created);
+                    return created;
+                } else {
+                    return current;
+                }
+            }
+        } else {
+            return channel;
+        }
+    }
+    
+    /**
+     * Drops the cached inboxes of the given key.
+     * 
+     * @param key the binding key
+     */
+    private void invalidate(Object key) {
+        synchronized (channels) {
+            channels.remove(key);
+        }
+    }
+    
+    private Inbox[] createChannel(Key<?> key, Object[] listeners) {
+        Map<Object, Inbox> map = inboxes.get(key);
+        if (map == null) {
+            map = new MapMaker().weakKeys().makeMap();
+            inboxes.put(key, map);
+        }
+        
+        final Set<Object> current = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        current.addAll(Arrays.asList(listeners));
+        final Iterator<Inbox> iterator = map.values().iterator();
+        while (iterator.hasNext()) {
+            final Inbox inbox = iterator.next();
+            if (!current.contains(inbox.listener)) {
+                inbox.cancel();
+                iterator.remove();
+            }
+        }
+        
+        final Settings configured = settings.containsKey(key) ? settings.get(key) : defaults;
+        final List<Inbox> created = Lists.newArrayListWithCapacity(listeners.length);
+        for (Object listener : listeners) {
+            final Inbox existing = map.get(listener);
+            if (existing == null) {
+                final Inbox inbox = new Inbox(key, listener, executorOf(listener), configured);
+                map.put(listener, inbox);
+                if (listener instanceof DemandAware) {
+                    DemandAware.class.cast(listener).onSubscribe(inbox);
+                }
+                if (!inbox.cancelled) {
+                    created.add(inbox);
+                }
+            } else if (!existing.cancelled) {
+                created.add(existing);
+            }
+        }
+        LOG.trace("Created channel with {} inbox(es) for {}", created.size(), key);
+        return created.toArray(new Inbox[created.size()]);
+    }
+    
+    private Executor executorOf(Object listener) {
+        for (Map.Entry<Class<?>, Executor> entry : isolated.entrySet()) {
+            if (entry.getKey().isInstance(listener)) {
+                return entry.getValue();
+            }
+        }
+        return executor;
+    }
+    
+    @Override
+    public <T> void notifyAsync(Key<T> key, Procedure<? super T> command) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(command, "Command");
+        final Inbox[] channel = channelOf(key);
+        checkCapacity(key, channel);
+        final long deadline = System.nanoTime() + blockTimeoutUnit.toNanos(blockTimeout);
+        boolean accepted = true;
+        try {
+            for (Inbox inbox : channel) {
+                accepted &= inbox.offer(command, deadline - System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for listeners for " + key, e);
+        }
+        if (!accepted) {
+            final long count = dropped.incrementAndGet();
+            if (count == 1L) {
+                LOG.warn("At least one listener for {} is behind, dropped {}", key, command);
+            } else {
+                LOG.debug("At least one listener for {} is behind, dropped {}, {} dropped so far", 
+                    new Object[] {key, command, count});
+            }
+        }
+    }
+    
+    /**
+     * Checks that all listeners using {@link DropPolicy#FAIL} have room for another
+     * notification, before it's buffered for any listener.
+     * 
+     * @param key the binding key
+     * @param channel the inboxes of all listeners for key
+     * @throws RejectedExecutionException if at least one of these listeners is full
+     */
+    private void checkCapacity(Key<?> key, Inbox[] channel) {
+        for (Inbox inbox : channel) {
+            if (inbox.rejects()) {
+                throw new RejectedExecutionException(String.format("Buffer of %s for %s is full", inbox.listener, key));
+            }
+        }
+    }
+    
+    @Override
+    public <T> boolean offerAsync(Key<T> key, Procedure<? super T> command) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(command, "Command");
+        final Inbox[] channel = channelOf(key);
+        checkCapacity(key, channel);
+        boolean accepted = true;
+        for (Inbox inbox : channel) {
+            accepted &= inbox.offerImmediately(command);
+        }
+        return accepted;
+    }
+    
+    @Override
+    public <T> boolean offerAsync(Key<T> key, Procedure<? super T> command, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(unit, "Unit");
+        final Inbox[] channel = channelOf(key);
+        checkCapacity(key, channel);
+        boolean accepted = true;
+        for (Inbox inbox : channel) {
+            accepted &= inbox.offer(command, unit.toNanos(timeout));
+        }
+        return accepted;
+    }
+    
+    /**
+     * Immutable buffer settings.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Settings {
+        
+        private final int capacity;
+        
+        private final DropPolicy policy;
+        
+        public Settings(int capacity, DropPolicy policy) {
+            Preconditions.checkArgument(capacity > 0, "BufferSize must be positive, but was %s", capacity);
+            this.capacity = capacity;
+            this.policy = Preconditions.checkNotNull(policy, "Policy");
+        }
+        
+    }
+    
+    /**
+     * Bounded buffer of pending notifications for one listener and one key.
+     * At most one drain task per inbox is running at any time.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private final class Inbox implements Subscription, Runnable {
+        
+        private final Object key;
+        
+        private final Object listener;
+        
+        private volatile Executor executor;
+        
+        private final ReentrantLock lock = new ReentrantLock();
+        
+        private final Condition notFull = lock.newCondition();
+        
+        private final Deque<Procedure<Object>> buffer = Lists.newLinkedList();
+        
+        private final AtomicLong demand;
+        
+        private final AtomicInteger wip = new AtomicInteger();
+        
+        private volatile Settings settings;
+        
+        private volatile boolean cancelled;
+        
+        public Inbox(Object key, Object listener, Executor executor, Settings settings) {
+            this.key = key;
+            this.listener = listener;
+            this.executor = executor;
+            this.settings = settings;
+            this.demand = new AtomicLong(listener instanceof DemandAware ? 0L : Long.MAX_VALUE);
+        }
+        
+        public void setExecutor(Executor executor) {
+            this.executor = executor;
+        }
+        
+        public void configure(Settings configured) {
+            lock.lock();
+            try {
+                this.settings = configured;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        public boolean offerImmediately(Procedure<?> command) {
+            try {
+                return offer(command, 0L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        
+        /**
+         * Checks whether this inbox would reject another notification.
+         * 
+         * @return true if this inbox uses {@link DropPolicy#FAIL} and is full
+         */
+        public boolean rejects() {
+            lock.lock();
+            try {
+                return !cancelled && settings.policy == DropPolicy.FAIL && buffer.size() >= settings.capacity;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Buffers the given command. Inboxes using {@link DropPolicy#FAIL} which
+         * filled up since they were checked using {@link #rejects()} drop it.
+         * 
+         * @param command the command
+         * @param timeoutNanos the maximum time to wait using {@link DropPolicy#BLOCK}
+         * @return true if the command has been buffered, false if it has been dropped
+         * @throws InterruptedException if interrupted while waiting
+         */
+        @SuppressWarnings("unchecked")
+        public boolean offer(Procedure<?> command, long timeoutNanos) throws InterruptedException {
+            if (cancelled) {
+                return false;
+            }
+            long nanos = timeoutNanos;
+            lock.lockInterruptibly();
+            try {
+                while (!cancelled && buffer.size() >= settings.capacity) {
+                    switch (settings.policy) {
+                        case DROP_NEWEST: {
+                            return false;
+                        }
+                        case DROP_OLDEST: {
+                            final Procedure<Object> dropped = buffer.poll();
+                            LOG.trace("Dropped oldest {} of {} for {}", new Object[] {dropped, listener, key});
+                            break;
+                        }
+                        case BLOCK: {
+                            if (nanos <= 0L) {
+                                return false;
+                            }
+                            nanos = notFull.awaitNanos(nanos);
+                            break;
+                        }
+                        case FAIL: {
+                            LOG.debug("Buffer of {} for {} filled up concurrently, dropping", listener, key);
+                            return false;
+                        }
+                        default: {
+                            throw new AssertionError("Unknown policy " + settings.policy);
+                        }
+                    }
+                }
+                if (cancelled) {
+                    return false;
+                }
+                buffer.add((Procedure<Object>) command);
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+            return true;
+        }
+        
+        private Procedure<Object> poll() {
+            lock.lock();
+            try {
+                final Procedure<Object> next = buffer.poll();
+                if (next != null) {
+                    notFull.signal();
+                }
+                return next;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    wip.set(0);
+                    throw e;
+                }
+            }
+        }
+        
+        @Override
+        public void request(long n) {
+            Preconditions.checkArgument(n > 0, "N must be positive, but was %s", n);
+            while (true) {
+                final long current = demand.get();
+                final long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                if (current == Long.MAX_VALUE || demand.compareAndSet(current, next)) {
+                    break;
+                }
+            }
+            schedule();
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+            lock.lock();
+            try {
+                buffer.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            invalidate(key);
+        }
+        
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                while (!cancelled && demand.get() > 0L) {
+                    final Procedure<Object> command = poll();
+                    if (command == null) {
+                        break;
+                    }
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    LOG.trace("notifying {} for {} on demand", listener, key);
+                    try {
+                        command.apply(listener);
+                    /* CHECKSTYLE:OFF */
+                    } catch (RuntimeException e) {
+                    /* CHECKSTYLE:ON */
+                        LOG.error("Notifying " + listener + " for " + key + " failed", e);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+        
+    }
+
+}
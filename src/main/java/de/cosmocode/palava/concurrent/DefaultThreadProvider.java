@@ -16,31 +16,79 @@
 
 package de.cosmocode.palava.concurrent;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Collections;
-import java.util.Set;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.jmx.MBeanService;
 
 /**
- * Default implementation of the {@link ThreadProvider} interface.
+ * Default implementation of the {@link GroupingThreadProvider} and {@link ContextPropagator} interfaces.
+ * 
+ * <p>
+ *   All created threads are kept in an inventory, grouped by the name of
+ *   their owning executor. Cpu time and allocated bytes of all threads are sampled
+ *   using the {@link ThreadMXBean} in a configurable, low frequency and published
+ *   together with creation and termination rates using the {@link DefaultThreadProviderMBean}
+ *   interface.
+ * </p>
+ * 
+ * <p>
+ *   All created threads run inside the {@link WorkerScoped} scope.
+ * </p>
  *
  * @author Oliver Lorenz
  * @author Willi Schoenborn
  */
-final class DefaultThreadProvider implements ThreadProvider {
+final class DefaultThreadProvider implements GroupingThreadProvider, ContextPropagator, Initializable, Disposable,
+    DefaultThreadProviderMBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultThreadProvider.class);
+    
+    private static final String DEFAULT_GROUP = "default";
+    
+    private static final ThreadMXBean BEAN = ManagementFactory.getThreadMXBean();
+    
+    private static final Comparator<Group> MOST_CPU_FIRST = new Comparator<Group>() {
+        
+        @Override
+        public int compare(Group left, Group right) {
+            final long l = left.cpuNanos;
+            final long r = right.cpuNanos;
+            return l < r ? 1 : l == r ? 0 : -1;
+        }
+        
+    };
 
-    private final ThreadFactory cachedFactory = new Factory(Executors.defaultThreadFactory());
+    private final ThreadFactory cachedFactory = new Factory(DEFAULT_GROUP, Executors.defaultThreadFactory());
+    
+    private final Map<Thread, Group> threads;
     
-    private final Set<Thread> threads;
+    private final ConcurrentMap<String, Group> groups = new MapMaker().makeMap();
     
     private final Object threadSize = new Object() {
 
@@ -51,8 +99,61 @@ final class DefaultThreadProvider implements ThreadProvider {
         
     };
     
-    public DefaultThreadProvider() {
-        this.threads = Collections.newSetFromMap(new MapMaker().weakKeys().<Thread, Boolean>makeMap());
+    private final ContextPropagation propagation = new ContextPropagation();
+    
+    private final MBeanService mBeanService;
+    
+    private long samplingInterval = 30;
+    
+    private TimeUnit samplingIntervalUnit = TimeUnit.SECONDS;
+    
+    private ScheduledExecutorService sampler;
+    
+    @Inject
+    public DefaultThreadProvider(MBeanService mBeanService) {
+        this.threads = new MapMaker().weakKeys().makeMap();
+        this.mBeanService = Preconditions.checkNotNull(mBeanService, "MBeanService");
+    }
+    
+    @Inject(optional = true)
+    void setSamplingInterval(@Named(ThreadProviderConfig.SAMPLING_INTERVAL) long samplingInterval) {
+        Preconditions.checkArgument(samplingInterval > 0, "SamplingInterval must be positive");
+        this.samplingInterval = samplingInterval;
+    }
+    
+    @Inject(optional = true)
+    void setSamplingIntervalUnit(@Named(ThreadProviderConfig.SAMPLING_INTERVAL_UNIT) TimeUnit samplingIntervalUnit) {
+        this.samplingIntervalUnit = Preconditions.checkNotNull(samplingIntervalUnit, "SamplingIntervalUnit");
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "thread-provider-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+            
+        });
+        sampler.scheduleWithFixedDelay(new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    sample();
+                /* CHECKSTYLE:OFF */
+                } catch (RuntimeException e) {
+                /* CHECKSTYLE:ON */
+                    // an exception would cancel all further samples
+                    LOG.warn("Sampling threads failed", e);
+                }
+            }
+            
+        }, samplingInterval, samplingInterval, samplingIntervalUnit);
+        mBeanService.register(this, "name", "threads");
     }
 
     @Override
@@ -67,7 +168,205 @@ final class DefaultThreadProvider implements ThreadProvider {
 
     @Override
     public ThreadFactory newThreadFactory(ThreadFactory threadFactory) {
-        return new Factory(threadFactory);
+        return new Factory(DEFAULT_GROUP, threadFactory);
+    }
+    
+    @Override
+    public ThreadFactory newThreadFactory(String group) {
+        return new Factory(group, Executors.defaultThreadFactory());
+    }
+    
+    @Override
+    public ThreadFactory newThreadFactory(String group, ThreadFactory threadFactory) {
+        return new Factory(group, threadFactory);
+    }
+    
+    @Override
+    public void addContextCarrier(ContextCarrier<?> carrier) {
+        propagation.add(carrier);
+    }
+    
+    @Override
+    public Runnable propagate(Runnable task) {
+        return propagation.wrap(task);
+    }
+    
+    @Override
+    public <V> Callable<V> propagate(Callable<V> task) {
+        return propagation.wrap(task);
+    }
+    
+    private Group groupOf(String name) {
+        final Group group = groups.get(name);
+        if (group == null) {
+            final Group created = new Group(name);
+            final Group existing = groups.putIfAbsent(name, created);
+            return existing == null ? created : existing;
+        } else {
+            return group;
+        }
+    }
+    
+    @Override
+    public int getThreadCount() {
+        return threads.size();
+    }
+    
+    @Override
+    public String[] getGroups() {
+        final List<Group> all = Lists.newArrayList(groups.values());
+        Collections.sort(all, MOST_CPU_FIRST);
+        final String[] lines = new String[all.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = all.get(i).toString();
+        }
+        return lines;
+    }
+    
+    @Override
+    public synchronized void sample() {
+        final boolean cpu = BEAN.isThreadCpuTimeSupported() && BEAN.isThreadCpuTimeEnabled();
+        final com.sun.management.ThreadMXBean allocation = allocationBean();
+        
+        final Map<Group, long[]> sums = Maps.newHashMap();
+        for (Group group : groups.values()) {
+            sums.put(group, new long[3]);
+        }
+        for (Map.Entry<Thread, Group> entry : threads.entrySet()) {
+            final Thread thread = entry.getKey();
+            if (!thread.isAlive()) {
+                continue;
+            }
+            // groups created after the first loop are summed as well
+            long[] sum = sums.get(entry.getValue());
+            if (sum == null) {
+                sum = new long[3];
+                sums.put(entry.getValue(), sum);
+            }
+            sum[0]++;
+            if (cpu) {
+                sum[1] += Math.max(0L, BEAN.getThreadCpuTime(thread.getId()));
+            }
+            if (allocation != null) {
+                sum[2] += Math.max(0L, allocation.getThreadAllocatedBytes(thread.getId()));
+            }
+        }
+        
+        final long now = System.nanoTime();
+        for (Map.Entry<Group, long[]> entry : sums.entrySet()) {
+            entry.getKey().update(now, entry.getValue());
+        }
+        LOG.trace("Sampled {} thread(s) in {} group(s)", threadSize, sums.size());
+    }
+    
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (BEAN instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) BEAN;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        try {
+            mBeanService.unregister(this, "name", "threads");
+        } finally {
+            if (sampler != null) {
+                sampler.shutdownNow();
+            }
+        }
+    }
+    
+    /**
+     * Statistics of all threads belonging to one executor.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Group {
+        
+        private final String name;
+        
+        private final AtomicLong created = new AtomicLong();
+        
+        private final AtomicLong terminated = new AtomicLong();
+        
+        /**
+         * Cpu time and allocated bytes of already terminated threads.
+         */
+        private final AtomicLong retiredCpuNanos = new AtomicLong();
+        
+        private final AtomicLong retiredBytes = new AtomicLong();
+        
+        private long lastSample = System.nanoTime();
+        
+        private long lastCreated;
+        
+        private long lastTerminated;
+        
+        private volatile long live;
+        
+        private volatile long cpuNanos;
+        
+        private volatile long allocatedBytes;
+        
+        private volatile double creationRate;
+        
+        private volatile double terminationRate;
+        
+        public Group(String name) {
+            this.name = name;
+        }
+        
+        /**
+         * Records the termination of the current thread.
+         */
+        public void retire() {
+            terminated.incrementAndGet();
+            if (BEAN.isCurrentThreadCpuTimeSupported() && BEAN.isThreadCpuTimeEnabled()) {
+                retiredCpuNanos.addAndGet(Math.max(0L, BEAN.getCurrentThreadCpuTime()));
+            }
+            final com.sun.management.ThreadMXBean allocation = allocationBean();
+            if (allocation != null) {
+                retiredBytes.addAndGet(Math.max(0L, allocation.getThreadAllocatedBytes(
+                    Thread.currentThread().getId())));
+            }
+        }
+        
+        /**
+         * Updates the sampled values. Only called by the sampler.
+         * 
+         * @param now the current value of {@link System#nanoTime()}
+         * @param sum live threads, cpu time and allocated bytes of all live threads
+         */
+        public void update(long now, long[] sum) {
+            final double minutes = (double) (now - lastSample) / TimeUnit.MINUTES.toNanos(1);
+            final long currentCreated = created.get();
+            final long currentTerminated = terminated.get();
+            if (minutes > 0) {
+                creationRate = (currentCreated - lastCreated) / minutes;
+                terminationRate = (currentTerminated - lastTerminated) / minutes;
+            }
+            lastSample = now;
+            lastCreated = currentCreated;
+            lastTerminated = currentTerminated;
+            live = sum[0];
+            cpuNanos = retiredCpuNanos.get() + sum[1];
+            allocatedBytes = retiredBytes.get() + sum[2];
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(
+                "%s: live=%d, created=%d, terminated=%d, created/min=%.2f, terminated/min=%.2f, " +
+                "cpu=%dms, allocated=%dbytes",
+                name, live, created.get(), terminated.get(), creationRate, terminationRate,
+                TimeUnit.NANOSECONDS.toMillis(cpuNanos), allocatedBytes);
+        }
+        
     }
     
     /**
@@ -80,9 +379,12 @@ final class DefaultThreadProvider implements ThreadProvider {
      */
     private class Factory implements ThreadFactory {
         
+        private final Group group;
+        
         private final ThreadFactory factory;
         
-        public Factory(ThreadFactory factory) {
+        public Factory(String group, ThreadFactory factory) {
+            this.group = groupOf(Preconditions.checkNotNull(group, "Group"));
             this.factory = Preconditions.checkNotNull(factory, "Factory");
         }
         
@@ -92,6 +394,7 @@ final class DefaultThreadProvider implements ThreadProvider {
                 
                 @Override
                 public void run() {
+                    final boolean entered = WorkerScope.enter();
                     try {
                         runnable.run();
                     /* CHECKSTYLE:OFF */
@@ -99,12 +402,25 @@ final class DefaultThreadProvider implements ThreadProvider {
                     /* CHECKSTYLE:ON */
                         LOG.error("Uncaught exception in thread " + Thread.currentThread(), e);
                         throw Throwables.propagate(e);
+                    } finally {
+                        if (entered) {
+                            WorkerScope.exit();
+                        }
+                        // decorated factories of this provider wrap twice, only the first removal counts
+                        final Group owner = threads.remove(Thread.currentThread());
+                        if (owner != null) {
+                            owner.retire();
+                        }
                     }
                 }
                 
             });
             
-            threads.add(thread);
+            final Group previous = threads.put(thread, group);
+            if (previous != null) {
+                previous.created.decrementAndGet();
+            }
+            group.created.incrementAndGet();
             LOG.trace("New thread {}, {} thread(s) currently in use", thread, threadSize);
             return thread;
         }
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link DefaultThreadProvider}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface DefaultThreadProviderMBean {
+
+    /**
+     * Returns the number of currently alive threads created by this provider.
+     * 
+     * @return the number of threads
+     */
+    int getThreadCount();
+    
+    /**
+     * Returns the statistics of all thread groups, ordered by consumed cpu time.
+     * Threads are grouped by the name of their owning executor. The values
+     * are as current as the last sampling.
+     * 
+     * @return a human readable description of all thread groups
+     */
+    String[] getGroups();
+    
+    /**
+     * Samples cpu time and allocated bytes of all threads immediately.
+     */
+    void sample();
+    
+}
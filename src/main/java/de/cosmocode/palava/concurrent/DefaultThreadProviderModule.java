@@ -23,8 +23,10 @@ import com.google.inject.Module;
 import com.google.inject.Singleton;
 
 /**
- * Binds {@link ThreadProvider} to {@link DefaultThreadProvider} and
- * {@link ThreadFactory} to {@link ThreadProvider}.
+ * Binds {@link ThreadProvider}, {@link GroupingThreadProvider} and {@link ContextPropagator}
+ * to {@link DefaultThreadProvider},
+ * {@link ThreadFactory} to {@link ThreadProvider} and the
+ * {@link WorkerScoped} scope.
  *
  * @author Willi Schoenborn
  */
@@ -32,8 +34,12 @@ public final class DefaultThreadProviderModule implements Module {
 
     @Override
     public void configure(Binder binder) {
+        binder.bind(DefaultThreadProvider.class).in(Singleton.class);
         binder.bind(ThreadProvider.class).to(DefaultThreadProvider.class).in(Singleton.class);
+        binder.bind(GroupingThreadProvider.class).to(DefaultThreadProvider.class).in(Singleton.class);
+        binder.bind(ContextPropagator.class).to(DefaultThreadProvider.class).in(Singleton.class);
         binder.bind(ThreadFactory.class).to(ThreadProvider.class).in(Singleton.class);
+        binder.bindScope(WorkerScoped.class, WorkerScope.INSTANCE);
     }
     
 }
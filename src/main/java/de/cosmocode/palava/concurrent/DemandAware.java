@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Listeners registered at a {@link DemandRegistry} may implement this
+ * interface to control the rate at which they are notified. Listeners
+ * which don't implement this interface have unbounded demand.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface DemandAware {
+
+    /**
+     * Called once before the first notification is buffered for this listener.
+     * No notifications will be delivered until demand is signaled using
+     * {@link Subscription#request(long)}.
+     * 
+     * @param subscription the subscription of this listener
+     */
+    void onSubscribe(Subscription subscription);
+    
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import de.cosmocode.collections.Procedure;
+
+/**
+ * An {@link AsyncRegistry} which bounds the number of pending notifications
+ * per key and listener. Listeners may signal their demand by implementing
+ * {@link DemandAware}. Publishers get notified using the return values of
+ * the offer methods when listeners fall behind.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface DemandRegistry extends AsyncRegistry {
+
+    /**
+     * Configures the buffer of all listeners for the given key.
+     * Already buffered notifications are kept.
+     * 
+     * @param <T> the generic type
+     * @param key the binding key
+     * @param bufferSize the maximum number of pending notifications per listener
+     * @param policy the policy applied when a buffer is full
+     * @throws NullPointerException if key or policy is null
+     * @throws IllegalArgumentException if bufferSize is not positive
+     */
+    <T> void configure(Key<T> key, int bufferSize, DropPolicy policy);
+    
+    /**
+     * Buffers command for all listeners for the given key without waiting.
+     * 
+     * @param <T> the generic type
+     * @param key the binding key
+     * @param command the command being invoked on every listener
+     * @return true if all listeners accepted the notification, false if at least
+     *         one listener was too far behind
+     * @throws NullPointerException if key or command is null
+     * @throws RejectedExecutionException if a buffer is full and the key is configured
+     *         to use {@link DropPolicy#FAIL}
+     */
+    <T> boolean offerAsync(Key<T> key, Procedure<? super T> command);
+    
+    /**
+     * Buffers command for all listeners for the given key, waiting up to the given
+     * timeout for every listener if the key is configured to use {@link DropPolicy#BLOCK}.
+     * 
+     * @param <T> the generic type
+     * @param key the binding key
+     * @param command the command being invoked on every listener
+     * @param timeout the maximum time to wait per listener
+     * @param unit the unit of timeout
+     * @return true if all listeners accepted the notification, false if at least
+     *         one listener was too far behind
+     * @throws NullPointerException if key, command or unit is null
+     * @throws InterruptedException if interrupted while waiting
+     * @throws RejectedExecutionException if a buffer is full and the key is configured
+     *         to use {@link DropPolicy#FAIL}
+     */
+    <T> boolean offerAsync(Key<T> key, Procedure<? super T> command, long timeout, TimeUnit unit)
+        throws InterruptedException;
+    
+}
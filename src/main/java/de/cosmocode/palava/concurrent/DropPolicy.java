@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Defines how a {@link DemandRegistry} reacts to notifications
+ * for listeners whose buffer is full.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public enum DropPolicy {
+
+    /**
+     * Discards the new notification.
+     */
+    DROP_NEWEST,
+    
+    /**
+     * Discards the oldest buffered notification to make room for the new one.
+     */
+    DROP_OLDEST,
+    
+    /**
+     * Lets the publisher wait for free space, up to the given timeout. Publishers
+     * using {@link AsyncRegistry#notifyAsync(de.cosmocode.palava.core.Registry.Key,
+     * de.cosmocode.collections.Procedure)} wait up to {@link AsyncRegistryConfig#BLOCK_TIMEOUT}
+     * for all listeners together and drop the notification for listeners still behind.
+     */
+    BLOCK,
+    
+    /**
+     * Rejects the notification with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    FAIL;
+    
+}
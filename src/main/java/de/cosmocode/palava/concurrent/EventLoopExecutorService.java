@@ -0,0 +1,421 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.jmx.MBeanService;
+
+/**
+ * An {@link ExecutorService} which consists of a fixed number of single threaded
+ * loops. Every loop owns a lock free multi producer/single consumer queue for tasks
+ * submitted by foreign threads and an unsynchronized queue for tasks submitted by
+ * the loop itself. Loops never share any state, which means there is neither a
+ * shared queue lock nor any cache line shared by all workers. Local tasks are
+ * preferred, but the inbox is polled at least every {@value #LOCAL_BATCH} tasks,
+ * so loops resubmitting tasks to themselves can't starve foreign tasks.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @see EventLoopModule
+ */
+final class EventLoopExecutorService extends AbstractExecutorService implements Initializable, Disposable,
+    EventLoopExecutorServiceMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventLoopExecutorService.class);
+    
+    private static final ThreadLocal<Loop> CURRENT = new ThreadLocal<Loop>();
+    
+    private static final int LOCAL_BATCH = 64;
+    
+    private final String name;
+    
+    private final long shutdownTimeout;
+    
+    private final TimeUnit shutdownTimeoutUnit;
+    
+    private final MBeanService mBeanService;
+    
+    private final ShutdownCoordinator coordinator;
+    
+    private final AtomicInteger next = new AtomicInteger();
+    
+    private ThreadProvider provider;
+    
+    private ContextPropagator propagator;
+    
+    private int size = Runtime.getRuntime().availableProcessors();
+    
+    private Loop[] loops;
+    
+    private CountDownLatch terminated;
+    
+    private volatile boolean shutdown;
+    
+    private volatile boolean stopped;
+    
+    @Inject
+    public EventLoopExecutorService(
+        @Named(ExecutorConfig.NAME) String name,
+        @Named(ExecutorConfig.SHUTDOWN_TIMEOUT) long shutdownTimeout,
+        @Named(ExecutorConfig.SHUTDOWN_TIMEOUT_UNIT) TimeUnit shutdownTimeoutUnit,
+        MBeanService mBeanService,
+        ShutdownCoordinator coordinator) {
+        
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.shutdownTimeout = shutdownTimeout;
+        this.shutdownTimeoutUnit = Preconditions.checkNotNull(shutdownTimeoutUnit, "ShutdownTimeoutUnit");
+        this.mBeanService = Preconditions.checkNotNull(mBeanService, "MBeanService");
+        this.coordinator = Preconditions.checkNotNull(coordinator, "Coordinator");
+    }
+    
+    @Inject(optional = true)
+    void setThreadProvider(ThreadProvider provider) {
+        this.provider = Preconditions.checkNotNull(provider, "Provider");
+    }
+    
+    @Inject(optional = true)
+    void setContextPropagator(ContextPropagator propagator) {
+        this.propagator = Preconditions.checkNotNull(propagator, "Propagator");
+    }
+    
+    @Inject(optional = true)
+    void setLoops(@Named(ExecutorConfig.LOOPS) int size) {
+        Preconditions.checkArgument(size > 0, "Loops must be positive, but was %s", size);
+        this.size = size;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        final ThreadFactory factory = provider == null ? 
+            Executors.defaultThreadFactory() : ThreadProviders.threadFactory(provider, provider, name);
+        
+        LOG.info("Starting {} loop(s) for {}", size, this);
+        loops = new Loop[size];
+        terminated = new CountDownLatch(size);
+        for (int i = 0; i < size; i++) {
+            loops[i] = new Loop();
+            loops[i].thread = factory.newThread(loops[i]);
+        }
+        for (Loop loop : loops) {
+            loop.thread.start();
+        }
+        
+        coordinator.register(this, this, shutdownTimeout, shutdownTimeoutUnit);
+        mBeanService.register(this, "name", name);
+    }
+    
+    @Override
+    public void execute(Runnable command) {
+        Preconditions.checkNotNull(command, "Command");
+        if (shutdown) {
+            throw new RejectedExecutionException(this + " has been shut down");
+        }
+        
+        final Object key = command instanceof Routable ? Routable.class.cast(command).getRoutingKey() : null;
+        final Runnable task = propagator == null ? command : propagator.propagate(command);
+        final Loop current = CURRENT.get();
+        
+        if (current != null && current.owner() == this && (key == null || route(key) == current)) {
+            // fast path, no synchronization required
+            current.local.add(task);
+            current.localCount++;
+        } else {
+            final Loop loop = key == null ? loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length] :
+                route(key);
+            loop.inbox.offer(task);
+            loop.wakeup();
+            if (shutdown && loop.inbox.remove(task)) {
+                throw new RejectedExecutionException(this + " has been shut down");
+            }
+        }
+    }
+    
+    private Loop route(Object key) {
+        final int hash = key.hashCode();
+        return loops[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % loops.length];
+    }
+    
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        if (runnable instanceof Routable) {
+            return new RoutableFuture<T>(runnable, value, Routable.class.cast(runnable).getRoutingKey());
+        } else {
+            return super.newTaskFor(runnable, value);
+        }
+    }
+    
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        if (callable instanceof Routable) {
+            return new RoutableFuture<T>(callable, Routable.class.cast(callable).getRoutingKey());
+        } else {
+            return super.newTaskFor(callable);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (loops == null) {
+            return;
+        }
+        for (Loop loop : loops) {
+            LockSupport.unpark(loop.thread);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        stopped = true;
+        shutdown();
+        final List<Runnable> tasks = Lists.newArrayList();
+        if (loops == null) {
+            return tasks;
+        }
+        for (Loop loop : loops) {
+            loop.thread.interrupt();
+            while (true) {
+                final Runnable task = loop.inbox.poll();
+                if (task == null) {
+                    break;
+                }
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && (terminated == null || terminated.getCount() == 0);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated == null || terminated.await(timeout, unit);
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public int getLoops() {
+        return size;
+    }
+    
+    @Override
+    public int getQueueSize() {
+        int queued = 0;
+        for (Loop loop : loops) {
+            // local queues can't be read safely, the inboxes are all we have
+            queued += loop.inbox.size();
+        }
+        return queued;
+    }
+    
+    @Override
+    public long getCompletedTaskCount() {
+        long completed = 0L;
+        for (Loop loop : loops) {
+            completed += loop.completed;
+        }
+        return completed;
+    }
+    
+    @Override
+    public long getLocalTaskCount() {
+        long local = 0L;
+        for (Loop loop : loops) {
+            local += loop.localCount;
+        }
+        return local;
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        try {
+            mBeanService.unregister(this, "name", name);
+        } finally {
+            coordinator.shutdown(this);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("EventLoopExecutorService [%s]", name);
+    }
+    
+    /**
+     * A single threaded loop. All fields except the inbox and the parked flag
+     * are written by the loop thread only.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private final class Loop implements Runnable {
+        
+        private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<Runnable>();
+        
+        private final Deque<Runnable> local = new ArrayDeque<Runnable>();
+        
+        private Thread thread;
+        
+        private int batch;
+        
+        private volatile boolean parked;
+        
+        private volatile long completed;
+        
+        private volatile long localCount;
+        
+        private EventLoopExecutorService owner() {
+            return EventLoopExecutorService.this;
+        }
+        
+        private void wakeup() {
+            if (parked) {
+                parked = false;
+                LockSupport.unpark(thread);
+            }
+        }
+        
+        private Runnable next() {
+            if (batch < LOCAL_BATCH) {
+                final Runnable task = local.poll();
+                if (task != null) {
+                    batch++;
+                    return task;
+                }
+            }
+            batch = 0;
+            final Runnable task = inbox.poll();
+            return task == null ? local.poll() : task;
+        }
+        
+        @Override
+        public void run() {
+            CURRENT.set(this);
+            try {
+                while (!stopped) {
+                    final Runnable task = next();
+                    if (task == null) {
+                        if (shutdown) {
+                            break;
+                        }
+                        parked = true;
+                        if (inbox.isEmpty() && !shutdown) {
+                            LockSupport.park(this);
+                        }
+                        parked = false;
+                        continue;
+                    }
+                    
+                    try {
+                        task.run();
+                    /* CHECKSTYLE:OFF */
+                    } catch (RuntimeException e) {
+                    /* CHECKSTYLE:ON */
+                        LOG.error("Uncaught exception in task " + task + " of " + owner(), e);
+                    /* CHECKSTYLE:OFF */
+                    } catch (Error e) {
+                    /* CHECKSTYLE:ON */
+                        // a dead loop would strand every task routed to it
+                        LOG.error("Uncaught error in task " + task + " of " + owner() + ", keeping loop alive", e);
+                    } finally {
+                        completed++;
+                        if (!stopped) {
+                            // don't leak interrupts into the next task
+                            Thread.interrupted();
+                        }
+                    }
+                }
+                if (!local.isEmpty()) {
+                    LOG.debug("Discarding {} local task(s) of {}", local.size(), owner());
+                    local.clear();
+                }
+            } finally {
+                CURRENT.remove();
+                terminated.countDown();
+            }
+        }
+        
+    }
+    
+    /**
+     * A {@link FutureTask} which keeps the routing key of its task.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     * @param <V> the generic result type
+     */
+    private static final class RoutableFuture<V> extends FutureTask<V> implements Routable {
+        
+        private final Object key;
+        
+        public RoutableFuture(Callable<V> callable, Object key) {
+            super(callable);
+            this.key = key;
+        }
+        
+        public RoutableFuture(Runnable runnable, V result, Object key) {
+            super(runnable, result);
+            this.key = key;
+        }
+        
+        @Override
+        public Object getRoutingKey() {
+            return key;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link EventLoopExecutorService}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface EventLoopExecutorServiceMBean {
+
+    /**
+     * Returns the name of this executor.
+     * 
+     * @return the name
+     */
+    String getName();
+    
+    /**
+     * Returns the number of loops.
+     * 
+     * @return the number of loops
+     */
+    int getLoops();
+    
+    /**
+     * Returns the number of queued tasks of all loops.
+     * 
+     * @return the number of queued tasks
+     */
+    int getQueueSize();
+    
+    /**
+     * Returns the number of completed tasks of all loops.
+     * 
+     * @return the number of completed tasks
+     */
+    long getCompletedTaskCount();
+    
+    /**
+     * Returns the number of tasks which have been queued on the
+     * submitting loop directly.
+     * 
+     * @return the number of local submissions
+     */
+    long getLocalTaskCount();
+    
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Key;
+import com.google.inject.Singleton;
+import com.google.inject.name.Names;
+
+import de.cosmocode.palava.core.inject.AbstractRebindModule;
+
+/**
+ * This module binds a named {@link ExecutorService} which consists of a fixed
+ * number of single threaded event loops. Every loop owns its queue and tasks are
+ * routed to exactly one loop, either by their {@link Routable#getRoutingKey() routing key}
+ * or round robin. The number of loops is configured using {@link ExecutorConfig#loops()}
+ * and defaults to the number of available processors.
+ * 
+ * <p>
+ *   Tasks submitted by a loop thread without a routing key (or with a key routed to
+ *   the submitting loop) are queued on the current loop without any synchronization.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class EventLoopModule extends AbstractRebindModule {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventLoopModule.class);
+
+    private final Key<ExecutorService> key;
+    
+    private final String name;
+
+    private final ExecutorConfig config;
+    
+    /**
+     * Creates a new {@link EventLoopModule} which uses the given name to rebind configuration
+     * entries and binds the configured {@link ExecutorService} using {@link Names#named(String)}.
+     * 
+     * @param name the desired name
+     */
+    public EventLoopModule(String name) {
+        this(Names.named(name), name);
+    }
+    
+    public EventLoopModule(Class<? extends Annotation> annotation, String name) {
+        this.key = Key.get(ExecutorService.class, Preconditions.checkNotNull(annotation, "Annotation"));
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.config = ExecutorConfig.named(name);
+    }
+    
+    public EventLoopModule(Annotation annotation, String name) {
+        this.key = Key.get(ExecutorService.class, Preconditions.checkNotNull(annotation, "Annotation"));
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.config = ExecutorConfig.named(name);
+    }
+    
+    @Override
+    protected void configuration() {
+        LOG.trace("Binding event loop configuration for {} using name {}", key, name);
+
+        bind(String.class).annotatedWith(Names.named(ExecutorConfig.NAME)).toInstance(name);
+
+        bind(long.class).annotatedWith(Names.named(ExecutorConfig.SHUTDOWN_TIMEOUT)).to(
+            Key.get(long.class, Names.named(config.shutdownTimeout())));
+        
+        bind(TimeUnit.class).annotatedWith(Names.named(ExecutorConfig.SHUTDOWN_TIMEOUT_UNIT)).to(
+            Key.get(TimeUnit.class, Names.named(config.shutdownTimeoutUnit())));
+    }
+    
+    @Override
+    protected void optionals() {
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.LOOPS)).to(
+            Key.get(int.class, Names.named(config.loops())));
+    }
+    
+    @Override
+    protected void bindings() {
+        bind(key).to(EventLoopExecutorService.class).in(Singleton.class);
+    }
+    
+    @Override
+    protected void expose() {
+        expose(key);
+    }
+    
+}
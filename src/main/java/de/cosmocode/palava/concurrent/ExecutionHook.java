@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * A hook called by {@link InstrumentedThreadPoolExecutor} around every task.
+ * Hooks run on the worker thread and must be cheap.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+interface ExecutionHook {
+
+    /**
+     * Called before the given task is executed.
+     * 
+     * @param thread the worker thread
+     * @param task the task
+     */
+    void beforeExecute(Thread thread, Runnable task);
+    
+    /**
+     * Called after the given task has been executed.
+     * 
+     * @param task the task
+     * @param throwable the exception which caused termination, or null
+     */
+    void afterExecute(Runnable task, Throwable throwable);
+    
+}
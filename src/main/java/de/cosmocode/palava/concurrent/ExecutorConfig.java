@@ -49,6 +49,107 @@ public final class ExecutorConfig {
     
     static final String SHUTDOWN_TIMEOUT_UNIT = "shutdownTimeoutUnit";
     
+    static final String STARTUP_MODE = "startupMode";
+    
+    static final String WARMUP_TASKS = "warmupTasks";
+    
+    static final String ALLOW_CORE_THREAD_TIMEOUT = "allowCoreThreadTimeout";
+    
+    static final String WEIGHT = "weight";
+    
+    static final String MIN_CONCURRENCY = "minConcurrency";
+    
+    static final String MAX_CONCURRENCY = "maxConcurrency";
+    
+    static final String TENANT_WEIGHTS = "tenantWeights";
+    
+    static final String LOOPS = "loops";
+    
+    static final String WAIT_STRATEGY = "waitStrategy";
+    
+    static final String SPIN_TRIES = "spinTries";
+    
+    static final String YIELD_TRIES = "yieldTries";
+    
+    static final String RING_CAPACITY = "ringCapacity";
+    
+    static final String SHEDDING_TARGET = "sheddingTarget";
+    
+    static final String SHEDDING_INTERVAL = "sheddingInterval";
+    
+    static final String SHEDDING_UNIT = "sheddingUnit";
+    
+    static final String SPILL_DIRECTORY = "spillDirectory";
+    
+    static final String STUCK_THRESHOLD = "stuckThreshold";
+    
+    static final String STUCK_THRESHOLD_UNIT = "stuckThresholdUnit";
+    
+    static final String STUCK_INTERRUPT = "stuckInterrupt";
+    
+    static final String PROFILING_SAMPLE_RATE = "profilingSampleRate";
+    
+    static final String PROFILING_TOP_K = "profilingTopK";
+    
+    static final String MAX_COMPENSATION = "maxCompensation";
+    
+    static final String INTERCEPTORS = "interceptors";
+    
+    static final String JOURNAL = "journal";
+    
+    static final String JOURNAL_COMPACTION_INTERVAL = "journalCompactionInterval";
+    
+    static final String JOURNAL_COMPACTION_INTERVAL_UNIT = "journalCompactionIntervalUnit";
+    
+    /**
+     * Global config key for the maximum time all executors may take to shut down
+     * together. Defaults to the largest configured shutdown timeout.
+     * 
+     * @since 2.6
+     */
+    public static final String SHUTDOWN_DEADLINE = "executors.shutdownDeadline";
+    
+    /**
+     * Global config key for the unit of {@link #SHUTDOWN_DEADLINE}. Defaults to seconds.
+     * 
+     * @since 2.6
+     */
+    public static final String SHUTDOWN_DEADLINE_UNIT = "executors.shutdownDeadlineUnit";
+    
+    /**
+     * Global config key for the number of worker threads shared by all executors
+     * configured using {@link SharedExecutorModule}. Defaults to the number of
+     * available processors.
+     * 
+     * @since 2.6
+     */
+    public static final String SHARED_POOL_SIZE = "executors.shared.poolSize";
+    
+    /**
+     * Global config key for the interval in milliseconds in which running tasks
+     * are checked for executors with a {@link #stuckThreshold()}. Defaults to 1000.
+     * 
+     * @since 2.6
+     */
+    public static final String WATCHDOG_INTERVAL = "executors.watchdog.interval";
+    
+    /**
+     * Global config key to emit Java Flight Recorder events for task submissions,
+     * rejections, executions and async listener notifications. Defaults to false.
+     * Requires a build and runtime on JDK 11 or later.
+     *
+     * @since 2.6
+     */
+    public static final String FLIGHT_RECORDER = "executors.flightRecorder";
+    
+    /**
+     * Global config key for the tick duration in milliseconds of the timer which
+     * expires task timeouts. Defaults to 10.
+     *
+     * @since 2.6
+     */
+    public static final String TIMEOUT_TICK = "executors.timeout.tick";
+    
     private static final String PREFIX = "executors.named.";
 
     private final String prefix;
@@ -162,4 +263,281 @@ public final class ExecutorConfig {
         return prefix + SHUTDOWN_TIMEOUT_UNIT;
     }
     
+    /**
+     * Create a prefixed config key for {@link StartupMode startupMode}.
+     * 
+     * @since 2.6
+     * @return the prefixed startupMode config key
+     */
+    public String startupMode() {
+        return prefix + STARTUP_MODE;
+    }
+    
+    /**
+     * Create a prefixed binding key for the {@link java.util.List} of {@link Runnable}s
+     * executed in {@link StartupMode#WARMUP}.
+     * 
+     * @since 2.6
+     * @return the prefixed warmupTasks binding key
+     */
+    public String warmupTasks() {
+        return prefix + WARMUP_TASKS;
+    }
+    
+    /**
+     * Create a prefixed config key for allowCoreThreadTimeout. If enabled,
+     * core threads terminate after being idle for the keep alive time, which must
+     * be positive then.
+     * 
+     * @since 2.6
+     * @return the prefixed allowCoreThreadTimeout config key
+     */
+    public String allowCoreThreadTimeout() {
+        return prefix + ALLOW_CORE_THREAD_TIMEOUT;
+    }
+    
+    /**
+     * Create a prefixed config key for the weight of a shared executor.
+     * 
+     * @since 2.6
+     * @return the prefixed weight config key
+     */
+    public String weight() {
+        return prefix + WEIGHT;
+    }
+    
+    /**
+     * Create a prefixed config key for the minimum concurrency of a shared executor,
+     * below which free workers serve it first. The minimums of all shared executors
+     * must not exceed {@link #SHARED_POOL_SIZE}.
+     * 
+     * @since 2.6
+     * @return the prefixed minConcurrency config key
+     */
+    public String minConcurrency() {
+        return prefix + MIN_CONCURRENCY;
+    }
+    
+    /**
+     * Create a prefixed config key for the maximum concurrency of a shared executor.
+     * 
+     * @since 2.6
+     * @return the prefixed maxConcurrency config key
+     */
+    public String maxConcurrency() {
+        return prefix + MAX_CONCURRENCY;
+    }
+    
+    /**
+     * Create a prefixed config key for the tenant weights of executors using
+     * {@link QueueMode#TENANT}, e.g. {@code tenantA=3,tenantB=1}.
+     * 
+     * @since 2.6
+     * @return the prefixed tenantWeights config key
+     */
+    public String tenantWeights() {
+        return prefix + TENANT_WEIGHTS;
+    }
+    
+    /**
+     * Create a prefixed config key for the number of loops of an event loop executor.
+     * 
+     * @since 2.6
+     * @return the prefixed loops config key
+     */
+    public String loops() {
+        return prefix + LOOPS;
+    }
+    
+    /**
+     * Create a prefixed config key for the {@link WaitStrategy} of idle workers.
+     * 
+     * @since 2.6
+     * @return the prefixed waitStrategy config key
+     */
+    public String waitStrategy() {
+        return prefix + WAIT_STRATEGY;
+    }
+    
+    /**
+     * Create a prefixed config key for the number of spin tries of idle workers.
+     * 
+     * @since 2.6
+     * @return the prefixed spinTries config key
+     */
+    public String spinTries() {
+        return prefix + SPIN_TRIES;
+    }
+    
+    /**
+     * Create a prefixed config key for the number of yield tries of idle workers.
+     * 
+     * @since 2.6
+     * @return the prefixed yieldTries config key
+     */
+    public String yieldTries() {
+        return prefix + YIELD_TRIES;
+    }
+    
+    /**
+     * Create a prefixed config key for the number of preallocated {@link LongTask} slots,
+     * rounded up to a power of two and at most 2^30.
+     * 
+     * @since 2.6
+     * @return the prefixed ringCapacity config key
+     */
+    public String ringCapacity() {
+        return prefix + RING_CAPACITY;
+    }
+    
+    /**
+     * Create a prefixed config key for the queue latency target. Executors
+     * shed load only if this key is configured.
+     * 
+     * @since 2.6
+     * @return the prefixed sheddingTarget config key
+     */
+    public String sheddingTarget() {
+        return prefix + SHEDDING_TARGET;
+    }
+    
+    /**
+     * Create a prefixed config key for the interval in which the minimum queue latency is tracked.
+     * 
+     * @since 2.6
+     * @return the prefixed sheddingInterval config key
+     */
+    public String sheddingInterval() {
+        return prefix + SHEDDING_INTERVAL;
+    }
+    
+    /**
+     * Create a prefixed config key for the unit of the shedding target and interval.
+     * 
+     * @since 2.6
+     * @return the prefixed sheddingUnit config key
+     */
+    public String sheddingUnit() {
+        return prefix + SHEDDING_UNIT;
+    }
+    
+    /**
+     * Create a prefixed config key for the segment directory of executors using
+     * {@link QueueMode#SPILLING}. Defaults to {@code java.io.tmpdir}.
+     * 
+     * @since 2.6
+     * @return the prefixed spillDirectory config key
+     */
+    public String spillDirectory() {
+        return prefix + SPILL_DIRECTORY;
+    }
+    
+    /**
+     * Create a prefixed config key for the journal file of scheduled {@link Job}s.
+     * Jobs are journaled only if this key is configured.
+     * 
+     * @since 2.6
+     * @return the prefixed journal config key
+     */
+    public String journal() {
+        return prefix + JOURNAL;
+    }
+    
+    /**
+     * Create a prefixed config key for the interval in which the job journal is compacted.
+     * 
+     * @since 2.6
+     * @return the prefixed journalCompactionInterval config key
+     */
+    public String journalCompactionInterval() {
+        return prefix + JOURNAL_COMPACTION_INTERVAL;
+    }
+    
+    /**
+     * Create a prefixed config key for the unit of the journal compaction interval.
+     * 
+     * @since 2.6
+     * @return the prefixed journalCompactionIntervalUnit config key
+     */
+    public String journalCompactionIntervalUnit() {
+        return prefix + JOURNAL_COMPACTION_INTERVAL_UNIT;
+    }
+    
+    /**
+     * Create a prefixed config key for the time after which a running task is considered
+     * stuck. Running tasks are watched only if this key is configured.
+     * 
+     * @since 2.6
+     * @return the prefixed stuckThreshold config key
+     */
+    public String stuckThreshold() {
+        return prefix + STUCK_THRESHOLD;
+    }
+    
+    /**
+     * Create a prefixed config key for the unit of the stuck threshold.
+     * 
+     * @since 2.6
+     * @return the prefixed stuckThresholdUnit config key
+     */
+    public String stuckThresholdUnit() {
+        return prefix + STUCK_THRESHOLD_UNIT;
+    }
+    
+    /**
+     * Create a prefixed config key for whether stuck tasks should be interrupted.
+     * 
+     * @since 2.6
+     * @return the prefixed stuckInterrupt config key
+     */
+    public String stuckInterrupt() {
+        return prefix + STUCK_INTERRUPT;
+    }
+    
+    /**
+     * Create a prefixed config key for the profiling sample rate, i.e. one of how many
+     * tasks is measured. Tasks are profiled only if this key is configured.
+     * 
+     * @since 2.6
+     * @return the prefixed profilingSampleRate config key
+     */
+    public String profilingSampleRate() {
+        return prefix + PROFILING_SAMPLE_RATE;
+    }
+    
+    /**
+     * Create a prefixed config key for the number of task classes or tags reported by the profiler.
+     * 
+     * @since 2.6
+     * @return the prefixed profilingTopK config key
+     */
+    public String profilingTopK() {
+        return prefix + PROFILING_TOP_K;
+    }
+    
+    /**
+     * Create a prefixed config key for the maximum number of workers started to compensate
+     * tasks blocking via {@link ManagedBlocking}. Defaults to -1, which disables compensation
+     * and the detection of tasks waiting on futures of their own executor. 0 enables detection only.
+     * 
+     * @since 2.6
+     * @return the prefixed maxCompensation config key
+     */
+    public String maxCompensation() {
+        return prefix + MAX_COMPENSATION;
+    }
+    
+    /**
+     * Create a prefixed config key for the {@link ExecutorInterceptor}s of one executor,
+     * e.g. {@code Multibinder.newSetBinder(binder(), ExecutorInterceptor.class, 
+     * Names.named(config.interceptors()))}. They are called after the ones bound without
+     * annotation, which apply to all executors.
+     * 
+     * @since 2.6
+     * @return the prefixed interceptors config key
+     */
+    public String interceptors() {
+        return prefix + INTERCEPTORS;
+    }
+    
 }
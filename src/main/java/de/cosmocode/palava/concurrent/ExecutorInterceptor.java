@@ -0,0 +1,63 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Intercepts the submission and execution of tasks of all executors bound by
+ * {@link ExecutorModule} and {@link SchedulerModule}. Interceptors are bound using
+ * a multibinder, e.g. {@code Multibinder.newSetBinder(binder(), ExecutorInterceptor.class)}
+ * for all executors or annotated with {@link ExecutorConfig#interceptors()} for a single one.
+ * Interceptors of all executors come first. They are called in binding order on submission
+ * and before execution and in reverse order after execution. All interceptors of an executor
+ * share one wrapper per task.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface ExecutorInterceptor {
+
+    /**
+     * Called in the submitting thread when the given task is submitted.
+     * 
+     * @param executor the executor name
+     * @param task the submitted task, either a {@link Runnable} or a {@link java.util.concurrent.Callable}
+     * @return an attachment which is passed to {@link #beforeExecute(String, Object, Object)}
+     *         and {@link #afterExecute(String, Object, Object, Throwable)}, may be null
+     */
+    Object onSubmit(String executor, Object task);
+    
+    /**
+     * Called in the worker thread before the given task is executed.
+     * 
+     * @param executor the executor name
+     * @param task the task
+     * @param attachment the attachment returned by {@link #onSubmit(String, Object)}
+     */
+    void beforeExecute(String executor, Object task, Object attachment);
+    
+    /**
+     * Called in the worker thread after the given task has been executed, even if
+     * it failed.
+     * 
+     * @param executor the executor name
+     * @param task the task
+     * @param attachment the attachment returned by {@link #onSubmit(String, Object)}
+     * @param throwable the exception which caused termination, or null
+     */
+    void afterExecute(String executor, Object task, Object attachment, Throwable throwable);
+    
+}
@@ -16,7 +16,10 @@
 
 package de.cosmocode.palava.concurrent;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
@@ -28,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.google.inject.Key;
 import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 
 import de.cosmocode.palava.core.inject.AbstractRebindModule;
@@ -41,9 +45,18 @@ import de.cosmocode.palava.core.inject.AbstractRebindModule;
 public class ExecutorModule extends AbstractRebindModule {
 
     private static final Logger LOG = LoggerFactory.getLogger(ExecutorModule.class);
+    
+    private static final TypeLiteral<List<Runnable>> TASKS = new TypeLiteral<List<Runnable>>() { };
+    
+    private static final TypeLiteral<Set<ExecutorInterceptor>> INTERCEPTORS = 
+        new TypeLiteral<Set<ExecutorInterceptor>>() { };
 
     private final Key<ExecutorService> key;
     
+    private final Key<LongTaskExecutor> longTaskKey;
+    
+    private final Key<TimeoutExecutor> timeoutKey;
+    
     private final String name;
 
     private final ExecutorConfig config;
@@ -61,12 +74,16 @@ public class ExecutorModule extends AbstractRebindModule {
     
     public ExecutorModule(Class<? extends Annotation> annotation, String name) {
         this.key = Key.get(ExecutorService.class, Preconditions.checkNotNull(annotation, "Annotation"));
+        this.longTaskKey = Key.get(LongTaskExecutor.class, annotation);
+        this.timeoutKey = Key.get(TimeoutExecutor.class, annotation);
         this.name = Preconditions.checkNotNull(name, "Name");
         this.config = ExecutorConfig.named(name);
     }
     
     public ExecutorModule(Annotation annotation, String name) {
         this.key = Key.get(ExecutorService.class, Preconditions.checkNotNull(annotation, "Annotation"));
+        this.longTaskKey = Key.get(LongTaskExecutor.class, annotation);
+        this.timeoutKey = Key.get(TimeoutExecutor.class, annotation);
         this.name = Preconditions.checkNotNull(name, "Name");
         this.config = ExecutorConfig.named(name);
     }
@@ -109,16 +126,78 @@ public class ExecutorModule extends AbstractRebindModule {
         
         bind(RejectedExecutionHandler.class).annotatedWith(Names.named(ExecutorConfig.REJECTION_HANDLER)).to(
             Key.get(RejectedExecutionHandler.class, Names.named(config.threadFactory())));
+        
+        bind(StartupMode.class).annotatedWith(Names.named(ExecutorConfig.STARTUP_MODE)).to(
+            Key.get(StartupMode.class, Names.named(config.startupMode())));
+        
+        bind(TASKS).annotatedWith(Names.named(ExecutorConfig.WARMUP_TASKS)).to(
+            Key.get(TASKS, Names.named(config.warmupTasks())));
+        
+        bind(boolean.class).annotatedWith(Names.named(ExecutorConfig.ALLOW_CORE_THREAD_TIMEOUT)).to(
+            Key.get(boolean.class, Names.named(config.allowCoreThreadTimeout())));
+        
+        bind(String.class).annotatedWith(Names.named(ExecutorConfig.TENANT_WEIGHTS)).to(
+            Key.get(String.class, Names.named(config.tenantWeights())));
+        
+        bind(WaitStrategy.class).annotatedWith(Names.named(ExecutorConfig.WAIT_STRATEGY)).to(
+            Key.get(WaitStrategy.class, Names.named(config.waitStrategy())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.SPIN_TRIES)).to(
+            Key.get(int.class, Names.named(config.spinTries())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.YIELD_TRIES)).to(
+            Key.get(int.class, Names.named(config.yieldTries())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.RING_CAPACITY)).to(
+            Key.get(int.class, Names.named(config.ringCapacity())));
+        
+        bind(long.class).annotatedWith(Names.named(ExecutorConfig.SHEDDING_TARGET)).to(
+            Key.get(long.class, Names.named(config.sheddingTarget())));
+        
+        bind(long.class).annotatedWith(Names.named(ExecutorConfig.SHEDDING_INTERVAL)).to(
+            Key.get(long.class, Names.named(config.sheddingInterval())));
+        
+        bind(TimeUnit.class).annotatedWith(Names.named(ExecutorConfig.SHEDDING_UNIT)).to(
+            Key.get(TimeUnit.class, Names.named(config.sheddingUnit())));
+        
+        bind(File.class).annotatedWith(Names.named(ExecutorConfig.SPILL_DIRECTORY)).to(
+            Key.get(File.class, Names.named(config.spillDirectory())));
+        
+        bind(long.class).annotatedWith(Names.named(ExecutorConfig.STUCK_THRESHOLD)).to(
+            Key.get(long.class, Names.named(config.stuckThreshold())));
+        
+        bind(TimeUnit.class).annotatedWith(Names.named(ExecutorConfig.STUCK_THRESHOLD_UNIT)).to(
+            Key.get(TimeUnit.class, Names.named(config.stuckThresholdUnit())));
+        
+        bind(boolean.class).annotatedWith(Names.named(ExecutorConfig.STUCK_INTERRUPT)).to(
+            Key.get(boolean.class, Names.named(config.stuckInterrupt())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.PROFILING_SAMPLE_RATE)).to(
+            Key.get(int.class, Names.named(config.profilingSampleRate())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.PROFILING_TOP_K)).to(
+            Key.get(int.class, Names.named(config.profilingTopK())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.MAX_COMPENSATION)).to(
+            Key.get(int.class, Names.named(config.maxCompensation())));
+        
+        bind(INTERCEPTORS).annotatedWith(Names.named(ExecutorConfig.INTERCEPTORS)).to(
+            Key.get(INTERCEPTORS, Names.named(config.interceptors())));
     }
     
     @Override
     protected void bindings() {
         bind(key).to(ConfigurableExecutorService.class).in(Singleton.class);
+        bind(longTaskKey).to(ConfigurableExecutorService.class);
+        bind(timeoutKey).to(ConfigurableExecutorService.class);
+        bind(ConfigurableExecutorService.class).in(Singleton.class);
     }
     
     @Override
     protected void expose() {
         expose(key);
+        expose(longTaskKey);
+        expose(timeoutKey);
     }
     
 }
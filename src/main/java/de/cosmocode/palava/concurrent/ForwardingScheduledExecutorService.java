@@ -36,96 +36,94 @@ import com.google.common.collect.ForwardingObject;
  */
 public abstract class ForwardingScheduledExecutorService extends ForwardingObject implements ScheduledExecutorService {
 
-    private ScheduledExecutorService delegate;
-    
     @Override
     protected abstract ScheduledExecutorService delegate();
 
     @Override
     public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
-        return delegate.schedule(command, delay, unit);
+        return delegate().schedule(command, delay, unit);
     }
 
     @Override
     public void execute(Runnable command) {
-        delegate.execute(command);
+        delegate().execute(command);
     }
 
     @Override
     public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
-        return delegate.schedule(callable, delay, unit);
+        return delegate().schedule(callable, delay, unit);
     }
 
     @Override
     public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
-        return delegate.scheduleAtFixedRate(command, initialDelay, period, unit);
+        return delegate().scheduleAtFixedRate(command, initialDelay, period, unit);
     }
 
     @Override
     public void shutdown() {
-        delegate.shutdown();
+        delegate().shutdown();
     }
 
     @Override
     public List<Runnable> shutdownNow() {
-        return delegate.shutdownNow();
+        return delegate().shutdownNow();
     }
 
     @Override
     public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
-        return delegate.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        return delegate().scheduleWithFixedDelay(command, initialDelay, delay, unit);
     }
 
     @Override
     public boolean isShutdown() {
-        return delegate.isShutdown();
+        return delegate().isShutdown();
     }
 
     @Override
     public boolean isTerminated() {
-        return delegate.isTerminated();
+        return delegate().isTerminated();
     }
 
     @Override
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-        return delegate.awaitTermination(timeout, unit);
+        return delegate().awaitTermination(timeout, unit);
     }
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return delegate.submit(task);
+        return delegate().submit(task);
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return delegate.submit(task, result);
+        return delegate().submit(task, result);
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return delegate.submit(task);
+        return delegate().submit(task);
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        return delegate.invokeAll(tasks);
+        return delegate().invokeAll(tasks);
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
         throws InterruptedException {
-        return delegate.invokeAll(tasks, timeout, unit);
+        return delegate().invokeAll(tasks, timeout, unit);
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        return delegate.invokeAny(tasks);
+        return delegate().invokeAny(tasks);
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
         throws InterruptedException, ExecutionException, TimeoutException {
-        return delegate.invokeAny(tasks, timeout, unit);
+        return delegate().invokeAny(tasks, timeout, unit);
     }
     
 }
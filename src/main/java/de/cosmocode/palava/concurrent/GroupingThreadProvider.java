@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link ThreadProvider} which accounts threads to named groups, usually
+ * the names of the owning executors. Executors use the group of their name
+ * if the bound {@link ThreadProvider} implements this interface.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface GroupingThreadProvider extends ThreadProvider {
+
+    /**
+     * Creates a new {@link ThreadFactory} which creates new Threads from runnable
+     * by using the default settings of {@link Thread#Thread(Runnable)}. All threads
+     * created by the returned factory are accounted to the given group, usually the
+     * name of the owning executor.
+     * 
+     * @since 2.6
+     * @param group the name of the thread group
+     * @return a new thread factory
+     * @throws NullPointerException if group is null
+     */
+    ThreadFactory newThreadFactory(String group);
+    
+    /**
+     * Creates a new {@link ThreadFactory} which delegates the actual creation to the
+     * given factory and accounts all created threads to the given group.
+     * 
+     * @since 2.6
+     * @param group the name of the thread group
+     * @param factory the backing factory
+     * @return a decorated version of the given factory
+     * @throws NullPointerException if group or factory is null
+     */
+    ThreadFactory newThreadFactory(String group, ThreadFactory factory);
+
+}
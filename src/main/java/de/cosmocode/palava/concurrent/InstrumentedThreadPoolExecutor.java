@@ -0,0 +1,111 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link ThreadPoolExecutor} which calls all registered {@link ExecutionHook}s
+ * around every task. Submitted tasks are represented by {@link CompensatingFuture}s.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private volatile ExecutionHook[] hooks = new ExecutionHook[0];
+    
+    private volatile BlockingCompensator compensator;
+    
+    private volatile boolean tenanted;
+    
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+        BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+    }
+    
+    /**
+     * Adds the given hook. Hooks are called in registration order before
+     * and in reverse order after each task.
+     * 
+     * @param hook the hook
+     */
+    public synchronized void addHook(ExecutionHook hook) {
+        Preconditions.checkNotNull(hook, "Hook");
+        final ExecutionHook[] copy = Arrays.copyOf(hooks, hooks.length + 1);
+        copy[hooks.length] = hook;
+        hooks = copy;
+    }
+    
+    /**
+     * Sets the compensator which is notified when tasks wait on futures of this pool.
+     * 
+     * @param compensator the compensator
+     */
+    public void setCompensator(BlockingCompensator compensator) {
+        this.compensator = Preconditions.checkNotNull(compensator, "Compensator");
+    }
+    
+    /**
+     * Sets whether this pool queues tasks by tenant, i.e. whether submitted tasks
+     * need to resolve their tenant in the submitting thread.
+     * 
+     * @param tenanted true if the queue of this pool is a {@link TenantQueue}
+     */
+    public void setTenanted(boolean tenanted) {
+        this.tenanted = tenanted;
+    }
+    
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new CompensatingFuture<T>(callable, compensator, tenanted);
+    }
+    
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new CompensatingFuture<T>(runnable, value, compensator, tenanted);
+    }
+    
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        // iterating over an array doesn't allocate
+        final ExecutionHook[] current = hooks;
+        for (int i = 0; i < current.length; i++) {
+            current[i].beforeExecute(t, r);
+        }
+    }
+    
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        final ExecutionHook[] current = hooks;
+        for (int i = current.length - 1; i >= 0; i--) {
+            current[i].afterExecute(r, t);
+        }
+        super.afterExecute(r, t);
+    }
+    
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+
+/**
+ * An ordered, immutable chain of {@link ExecutorInterceptor}s. Instead of nesting one
+ * decorator per interceptor, every task is wrapped exactly once and the wrapper
+ * iterates the interceptors. A failing {@link ExecutorInterceptor#beforeExecute(String, Object, Object)}
+ * prevents the task from running, while failures in
+ * {@link ExecutorInterceptor#afterExecute(String, Object, Object, Throwable)} are logged.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class InterceptorChain {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InterceptorChain.class);
+    
+    private final String executor;
+    
+    private final ExecutorInterceptor[] interceptors;
+    
+    private InterceptorChain(String executor, ExecutorInterceptor[] interceptors) {
+        this.executor = executor;
+        this.interceptors = interceptors;
+    }
+    
+    /**
+     * Compiles the given interceptors into a chain.
+     * 
+     * @param executor the executor name
+     * @param interceptors the interceptors in binding order
+     * @return a new chain or null if interceptors is empty
+     */
+    public static InterceptorChain of(String executor, Set<ExecutorInterceptor> interceptors) {
+        Preconditions.checkNotNull(executor, "Executor");
+        Preconditions.checkNotNull(interceptors, "Interceptors");
+        if (interceptors.isEmpty()) {
+            return null;
+        } else {
+            return new InterceptorChain(executor, Iterables.toArray(interceptors, ExecutorInterceptor.class));
+        }
+    }
+    
+    private Object[] submit(Object task) {
+        final Object[] attachments = new Object[interceptors.length];
+        for (int i = 0; i < interceptors.length; i++) {
+            attachments[i] = interceptors[i].onSubmit(executor, task);
+        }
+        return attachments;
+    }
+    
+    /**
+     * Calls all interceptors before execution.
+     * 
+     * @param task the task
+     * @param attachments the attachments
+     * @return the number of called interceptors
+     */
+    private int before(Object task, Object[] attachments) {
+        int called = 0;
+        try {
+            for (; called < interceptors.length; called++) {
+                interceptors[called].beforeExecute(executor, task, attachments[called]);
+            }
+        } catch (RuntimeException e) {
+            after(task, attachments, called, e);
+            throw e;
+        }
+        return called;
+    }
+    
+    private void after(Object task, Object[] attachments, int called, Throwable throwable) {
+        for (int i = called - 1; i >= 0; i--) {
+            try {
+                interceptors[i].afterExecute(executor, task, attachments[i], throwable);
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                LOG.error("Interceptor " + interceptors[i] + " failed after " + task, e);
+            }
+        }
+    }
+    
+    /**
+     * Wraps the given delegate, which runs the given task, e.g. a profiled task.
+     * Interceptors see the task itself. Must be called in the submitting thread.
+     * 
+     * @param task the task passed to all interceptors
+     * @param delegate the task actually being run
+     * @return the intercepted delegate
+     */
+    public Runnable intercept(Runnable task, Runnable delegate) {
+        return new InterceptedRunnable(this, task, delegate, submit(task));
+    }
+    
+    /**
+     * Wraps the given delegate, which calls the given task, e.g. a profiled task.
+     * Interceptors see the task itself. Must be called in the submitting thread.
+     * 
+     * @param <V> the generic result type
+     * @param task the task passed to all interceptors
+     * @param delegate the task actually being called
+     * @return the intercepted delegate
+     */
+    public <V> Callable<V> intercept(final Callable<V> task, final Callable<V> delegate) {
+        final Object[] attachments = submit(task);
+        return new Callable<V>() {
+            
+            @Override
+            public V call() throws Exception {
+                final int called = before(task, attachments);
+                Throwable throwable = null;
+                try {
+                    return delegate.call();
+                /* CHECKSTYLE:OFF */
+                } catch (Exception e) {
+                /* CHECKSTYLE:ON */
+                    throwable = e;
+                    throw e;
+                } catch (Error e) {
+                    throwable = e;
+                    throw e;
+                } finally {
+                    after(task, attachments, called, throwable);
+                }
+            }
+            
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+            
+        };
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("InterceptorChain [%s]", executor);
+    }
+    
+    /**
+     * A runnable calling all interceptors around its task. It is deliberately not
+     * serializable, because it would lose its chain and attachments on the way and
+     * skip all interceptors after deserialization.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class InterceptedRunnable implements Runnable {
+        
+        private final InterceptorChain chain;
+        
+        private final Runnable task;
+        
+        private final Runnable delegate;
+        
+        private final Object[] attachments;
+        
+        public InterceptedRunnable(InterceptorChain chain, Runnable task, Runnable delegate, Object[] attachments) {
+            this.chain = chain;
+            this.task = task;
+            this.delegate = delegate;
+            this.attachments = attachments;
+        }
+        
+        @Override
+        public void run() {
+            final int called = chain.before(task, attachments);
+            Throwable throwable = null;
+            try {
+                delegate.run();
+            } catch (RuntimeException e) {
+                throwable = e;
+                throw e;
+            } catch (Error e) {
+                throwable = e;
+                throw e;
+            } finally {
+                chain.after(task, attachments, called, throwable);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+        
+    }
+    
+}
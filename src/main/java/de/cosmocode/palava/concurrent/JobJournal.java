@@ -0,0 +1,275 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * An append-only journal of pending {@link Job}s. Every scheduled job is appended
+ * with its absolute due time, every finished or cancelled job is appended as a removal.
+ * Replaying reads the whole file once, keeping the latest record per id, and
+ * compaction rewrites the file with all pending jobs only.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class JobJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JobJournal.class);
+    
+    private static final byte SCHEDULED = 1;
+    
+    private static final byte REMOVED = 2;
+    
+    private final File file;
+    
+    private final Map<String, Entry> entries = Maps.newLinkedHashMap();
+    
+    private DataOutputStream out;
+    
+    private int records;
+    
+    private boolean closed;
+    
+    public JobJournal(File file) {
+        this.file = Preconditions.checkNotNull(file, "File");
+    }
+    
+    /**
+     * Reads all records, compacts the file and opens it for appending.
+     * 
+     * @return all pending entries by id
+     * @throws IOException if reading or compacting fails
+     */
+    public synchronized Map<String, Entry> replay() throws IOException {
+        Preconditions.checkState(!closed, "%s has been closed", this);
+        Preconditions.checkState(out == null, "%s has been replayed already", this);
+        if (file.exists()) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    final byte type;
+                    try {
+                        type = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    read(type, in);
+                    records++;
+                }
+            } catch (EOFException e) {
+                LOG.warn("Ignoring truncated record at the end of {}", file);
+            } finally {
+                in.close();
+            }
+        }
+        LOG.info("Replayed {} record(s) of {} into {} pending job(s)", new Object[] {
+            records, file, entries.size()
+        });
+        compact();
+        return ImmutableMap.copyOf(entries);
+    }
+    
+    private void read(byte type, DataInputStream in) throws IOException {
+        final String id = in.readUTF();
+        switch (type) {
+            case SCHEDULED: {
+                final long due = in.readLong();
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                entries.put(id, new Entry(id, due, bytes));
+                break;
+            }
+            case REMOVED: {
+                entries.remove(id);
+                break;
+            }
+            default: {
+                throw new IOException("Unknown record type " + type + " in " + file);
+            }
+        }
+    }
+    
+    private void write(DataOutputStream out, Entry entry) throws IOException {
+        out.writeByte(SCHEDULED);
+        out.writeUTF(entry.id);
+        out.writeLong(entry.due);
+        out.writeInt(entry.bytes.length);
+        out.write(entry.bytes);
+    }
+    
+    /**
+     * Appends the given job.
+     * 
+     * @param id the id
+     * @param due the due time in milliseconds since the epoch
+     * @param job the job
+     * @throws IOException if serializing or writing fails
+     */
+    public synchronized void scheduled(String id, long due, Job job) throws IOException {
+        Preconditions.checkState(out != null, "%s has not been replayed yet", this);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream stream = new ObjectOutputStream(bytes);
+        stream.writeObject(job);
+        stream.close();
+        
+        final Entry entry = new Entry(id, due, bytes.toByteArray());
+        write(out, entry);
+        out.flush();
+        entries.put(id, entry);
+        records++;
+    }
+    
+    /**
+     * Appends the removal of the given job, if it is pending.
+     * 
+     * @param id the id
+     * @throws IOException if writing fails
+     */
+    public synchronized void removed(String id) throws IOException {
+        if (out == null || entries.remove(id) == null) {
+            return;
+        }
+        out.writeByte(REMOVED);
+        out.writeUTF(id);
+        out.flush();
+        records++;
+    }
+    
+    /**
+     * Rewrites the journal with all pending jobs. The current file is kept
+     * open for appending until the compacted one replaced it. Does nothing
+     * once this journal has been closed.
+     * 
+     * @throws IOException if writing fails
+     */
+    public synchronized void compact() throws IOException {
+        if (closed) {
+            return;
+        }
+        final int before = records;
+        final File temp = new File(file.getPath() + ".compact");
+        final DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            for (Entry entry : entries.values()) {
+                write(compacted, entry);
+            }
+        } finally {
+            compacted.close();
+        }
+        
+        if (out != null) {
+            out.close();
+        }
+        try {
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Unable to replace " + file + " with " + temp);
+            }
+            records = entries.size();
+        } finally {
+            // appends to the old file if the swap failed
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        LOG.debug("Compacted {} from {} to {} record(s)", new Object[] {file, before, records});
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("JobJournal [%s]", file);
+    }
+    
+    /**
+     * A pending job.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    static final class Entry {
+        
+        private final String id;
+        
+        private final long due;
+        
+        private final byte[] bytes;
+        
+        private Entry(String id, long due, byte[] bytes) {
+            this.id = id;
+            this.due = due;
+            this.bytes = bytes;
+        }
+        
+        public String getId() {
+            return id;
+        }
+        
+        public long getDue() {
+            return due;
+        }
+        
+        /**
+         * Deserializes the job of this entry.
+         * 
+         * @return the job
+         * @throws IOException if reading fails
+         * @throws ClassNotFoundException if the class of the job is unknown
+         */
+        public Job getJob() throws IOException, ClassNotFoundException {
+            final ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return Job.class.cast(stream.readObject());
+            } finally {
+                stream.close();
+            }
+        }
+        
+    }
+    
+}
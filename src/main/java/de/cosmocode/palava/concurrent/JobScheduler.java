@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules {@link Job}s by id. Schedulers configured using {@link SchedulerModule}
+ * are bound to this interface as well, using the same binding annotation. If
+ * {@link ExecutorConfig#journal()} is configured, pending jobs are written to
+ * a local journal and rescheduled when the scheduler is initialized again.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface JobScheduler {
+
+    /**
+     * Schedules the given job. A pending job with the same id is replaced.
+     * Contexts registered at the {@link ThreadProvider} are <strong>not</strong>
+     * propagated, because they couldn't be restored after a restart.
+     * 
+     * @param id the id of the job
+     * @param job the job
+     * @param delay the delay
+     * @param unit the unit of delay
+     * @return a future representing the pending job
+     * @throws NullPointerException if id, job or unit is null
+     * @throws RejectedExecutionException if the job can't be scheduled or journaled
+     */
+    ScheduledFuture<?> schedule(String id, Job job, long delay, TimeUnit unit);
+    
+    /**
+     * Cancels the pending job with the given id.
+     * 
+     * @param id the id of the job
+     * @return true if there was a pending job with the given id, false otherwise
+     */
+    boolean cancel(String id);
+    
+}
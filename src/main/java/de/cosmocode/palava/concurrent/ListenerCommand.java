@@ -0,0 +1,37 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * A command which notifies a listener about a single event.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @param <T> the generic listener type
+ * @param <E> the generic event type
+ */
+public interface ListenerCommand<T, E> {
+
+    /**
+     * Notifies listener about event.
+     * 
+     * @param listener the listener
+     * @param event the event
+     */
+    void apply(T listener, E event);
+    
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Invocation statistics of a single listener for a single key.
+ * Run times are recorded in a histogram of power-of-two microsecond
+ * buckets, which keeps recording allocation- and lock-free.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class ListenerStatistics {
+
+    private static final int BUCKETS = 32;
+    
+    private static final double PERCENTILE = 0.99;
+    
+    private final String listener;
+    
+    private final AtomicLong invocations = new AtomicLong();
+    
+    private final AtomicLong failures = new AtomicLong();
+    
+    private final AtomicLong totalNanos = new AtomicLong();
+    
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    
+    public ListenerStatistics(Object listener) {
+        this.listener = Preconditions.checkNotNull(listener, "Listener").toString();
+    }
+    
+    /**
+     * Records a single invocation.
+     * 
+     * @param nanos the run time in nanoseconds
+     * @param failed whether the invocation failed
+     */
+    public void record(long nanos, boolean failed) {
+        invocations.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        totalNanos.addAndGet(nanos);
+        while (true) {
+            final long max = maxNanos.get();
+            if (nanos <= max || maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        histogram.incrementAndGet(Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros)));
+    }
+    
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        invocations.set(0);
+        failures.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+    
+    public long getInvocations() {
+        return invocations.get();
+    }
+    
+    public long getFailures() {
+        return failures.get();
+    }
+    
+    /**
+     * Returns the mean run time in microseconds.
+     * 
+     * @return the mean run time or 0 if there were no invocations
+     */
+    public long getMeanMicros() {
+        final long count = invocations.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / count);
+    }
+    
+    /**
+     * Returns the upper bound of the bucket containing the 99th percentile
+     * in microseconds.
+     * 
+     * @return the approximated 99th percentile
+     */
+    public long getPercentileMicros() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += histogram.get(i);
+        }
+        final long threshold = (long) Math.ceil(total * PERCENTILE);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram.get(i);
+            if (seen >= threshold && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: invocations=%d, failures=%d, mean=%dus, p99<=%dus, max=%dus", 
+            listener, getInvocations(), getFailures(), getMeanMicros(), getPercentileMicros(),
+            TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+    }
+    
+}
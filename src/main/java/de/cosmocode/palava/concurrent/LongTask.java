@@ -0,0 +1,37 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * A fire-and-forget task taking a primitive argument, usually an id.
+ * Implementations are expected to be stateless and reused for many
+ * invocations.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @see LongTaskExecutor
+ */
+public interface LongTask {
+
+    /**
+     * Runs this task.
+     * 
+     * @param argument the argument passed to {@link LongTaskExecutor#execute(LongTask, long)}
+     */
+    void run(long argument);
+    
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An executor for {@link LongTask}s which doesn't allocate per task. Executors
+ * configured using {@link ExecutorModule} are bound to this interface as well,
+ * using the same binding annotation.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface LongTaskExecutor extends Executor {
+
+    /**
+     * Executes the given task with the given argument some time in the future.
+     * Contexts registered at the {@link ThreadProvider} are <strong>not</strong>
+     * propagated to the executing thread.
+     * 
+     * @param task the task
+     * @param argument the argument passed to {@link LongTask#run(long)}
+     * @throws NullPointerException if task is null
+     * @throws RejectedExecutionException if the task can't be accepted
+     */
+    void execute(LongTask task, long argument);
+    
+}
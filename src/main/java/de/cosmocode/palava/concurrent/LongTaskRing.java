@@ -0,0 +1,230 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded multi producer/multi consumer ring of preallocated
+ * {@link LongTask} slots. Each slot carries a sequence number which tells
+ * producers and consumers whether the slot is free or published, so neither
+ * offering nor running a task allocates.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class LongTaskRing {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LongTaskRing.class);
+    
+    /**
+     * The largest capacity which can still be rounded up to a power of two.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+    
+    private final int mask;
+    
+    private final AtomicLongArray sequences;
+    
+    private final LongTask[] tasks;
+    
+    private final long[] arguments;
+    
+    private final AtomicLong head = new AtomicLong();
+    
+    private final AtomicLong tail = new AtomicLong();
+    
+    private volatile TaskWatch watch;
+    
+    public LongTaskRing(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, but was %s", capacity);
+        Preconditions.checkArgument(capacity <= MAXIMUM_CAPACITY,
+            "Capacity must not exceed %s, but was %s", MAXIMUM_CAPACITY, capacity);
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.tasks = new LongTask[size];
+        this.arguments = new long[size];
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+    
+    /**
+     * Sets the watch which tracks every task run by {@link #runNext()}.
+     * 
+     * @param watch the watch
+     */
+    public void setWatch(TaskWatch watch) {
+        this.watch = Preconditions.checkNotNull(watch, "Watch");
+    }
+    
+    /**
+     * Offers the given task.
+     * 
+     * @param task the task
+     * @param argument the argument
+     * @return true if the task has been queued, false if the ring is full
+     */
+    public boolean offer(LongTask task, long argument) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    tasks[index] = task;
+                    arguments[index] = argument;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+    
+    /**
+     * Takes the next task and runs it in the current thread.
+     * 
+     * @return true if a task has been run, false if the ring is empty
+     */
+    public boolean runNext() {
+        final long position = claim();
+        if (position == -1L) {
+            return false;
+        } else {
+            final int index = (int) position & mask;
+            final LongTask task = tasks[index];
+            final long argument = arguments[index];
+            release(index, position);
+            run(task, argument);
+            return true;
+        }
+    }
+    
+    /**
+     * Takes the next task without running it. Unlike {@link #runNext()} this
+     * allocates and is meant for tasks which can't be run by a drainer.
+     * 
+     * @return the next task bound to its argument or null if the ring is empty
+     */
+    public Runnable poll() {
+        final long position = claim();
+        if (position == -1L) {
+            return null;
+        } else {
+            final int index = (int) position & mask;
+            final LongTask task = tasks[index];
+            final long argument = arguments[index];
+            release(index, position);
+            return new Bound(task, argument);
+        }
+    }
+    
+    private long claim() {
+        long position = head.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return -1L;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+    
+    private void release(int index, long position) {
+        tasks[index] = null;
+        sequences.lazySet(index, position + mask + 1);
+    }
+    
+    private void run(LongTask task, long argument) {
+        final TaskWatch current = watch;
+        if (current != null) {
+            current.beforeTask(task);
+        }
+        try {
+            task.run(argument);
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            LOG.error("Uncaught exception in task " + task + " with argument " + argument, e);
+        } finally {
+            if (current != null) {
+                current.afterTask();
+            }
+        }
+    }
+    
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+    
+    public int size() {
+        return (int) Math.max(0L, tail.get() - head.get());
+    }
+    
+    public int capacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * A task bound to its argument.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Bound implements Runnable {
+        
+        private final LongTask task;
+        
+        private final long argument;
+        
+        public Bound(LongTask task, long argument) {
+            this.task = task;
+            this.argument = argument;
+        }
+        
+        @Override
+        public void run() {
+            task.run(argument);
+        }
+        
+        @Override
+        public String toString() {
+            return task + "(" + argument + ")";
+        }
+        
+    }
+    
+}
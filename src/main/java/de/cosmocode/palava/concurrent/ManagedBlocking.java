@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Lets tasks declare that they are about to block, e.g. on I/O. If the task runs
+ * on an executor configured with {@link ExecutorConfig#maxCompensation()}, the pool
+ * temporarily starts a compensating worker, so CPU-sized pools keep their throughput.
+ * Outside of such executors both methods do nothing.
+ * 
+ * <pre>
+ * ManagedBlocking.begin();
+ * try {
+ *     return socket.read(buffer);
+ * } finally {
+ *     ManagedBlocking.end();
+ * }
+ * </pre>
+ * 
+ * <p>
+ *   Calls may be nested, only the outermost pair compensates. Futures returned by
+ *   such executors do this automatically when waited on by a task of the same executor.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class ManagedBlocking {
+
+    private ManagedBlocking() {
+        
+    }
+    
+    /**
+     * Declares that the current task is about to block.
+     */
+    public static void begin() {
+        final BlockingCompensator compensator = BlockingCompensator.current();
+        if (compensator != null) {
+            compensator.begin();
+        }
+    }
+    
+    /**
+     * Declares that the current task stopped blocking.
+     * 
+     * @throws IllegalStateException if not preceded by {@link #begin()}
+     */
+    public static void end() {
+        final BlockingCompensator compensator = BlockingCompensator.current();
+        if (compensator != null) {
+            compensator.end();
+        }
+    }
+    
+}
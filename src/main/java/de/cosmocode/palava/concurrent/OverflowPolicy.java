@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Defines how a bounded {@link AsyncRegistry} listener reacts to notifications
+ * which arrive while it already runs the maximum number of notifications.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Keeps the notification and runs it as soon as a running one finished.
+     * Notifications exceeding {@link AsyncRegistryConfig#MAX_QUEUED} are discarded.
+     */
+    QUEUE,
+    
+    /**
+     * Discards the notification.
+     */
+    DROP,
+    
+    /**
+     * Runs the notification in the thread which dispatches it.
+     */
+    CALLER_RUNS;
+    
+}
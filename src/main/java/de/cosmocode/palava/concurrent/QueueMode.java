@@ -87,7 +87,9 @@ public enum QueueMode implements Factory<BlockingQueue<Runnable>> {
 
     /**
      * A queue mode which produces {@link PriorityBlockingQueue}s.
-     * This mode does <strong>not</strong> allow capacity configuration.
+     * This mode does <strong>not</strong> allow capacity configuration and can't be
+     * combined with profiling, interceptors or flight recording, which wrap tasks into
+     * non comparable ones. Propagated contexts keep tasks comparable.
      */
     PRIORITY {
         
@@ -101,6 +103,74 @@ public enum QueueMode implements Factory<BlockingQueue<Runnable>> {
             throw new UnsupportedOperationException(name() + " is not applicable with a capacity");
         }
         
+    },
+    
+    /**
+     * A queue mode which produces tenant aware queues with one sub queue
+     * per tenant and weighted round robin dequeuing.
+     * This mode supports capacity configuration, which limits the total
+     * number of queued tasks.
+     * 
+     * @since 2.6
+     * @see Tenants
+     */
+    TENANT {
+        
+        @Override
+        public BlockingQueue<Runnable> create() {
+            return new TenantQueue(Integer.MAX_VALUE);
+        }
+        
+        @Override
+        public BlockingQueue<Runnable> create(int capacity) {
+            return new TenantQueue(capacity);
+        }
+        
+    },
+    
+    /**
+     * A queue mode which produces lock free multi producer/single consumer queues
+     * for pools with exactly one thread, which rules out blocking compensation.
+     * This mode supports capacity configuration.
+     * 
+     * @since 2.6
+     */
+    SINGLE_CONSUMER {
+        
+        @Override
+        public BlockingQueue<Runnable> create() {
+            return new SingleConsumerQueue(Integer.MAX_VALUE);
+        }
+        
+        @Override
+        public BlockingQueue<Runnable> create(int capacity) {
+            return new SingleConsumerQueue(capacity);
+        }
+        
+    },
+    
+    /**
+     * A queue mode which produces unbounded queues holding at most capacity tasks
+     * on the heap and spilling all further serializable tasks to disk.
+     * This mode <strong>requires</strong> capacity configuration and can't be combined
+     * with profiling, interceptors or flight recording, which wrap tasks into non
+     * serializable ones. Propagated contexts have the same effect, tasks rejected
+     * because of them are counted by {@link SpillingQueueMBean#getRejectedCount()}.
+     * 
+     * @since 2.6
+     */
+    SPILLING {
+        
+        @Override
+        public BlockingQueue<Runnable> create() {
+            throw new UnsupportedOperationException(name() + " requires a capacity");
+        }
+        
+        @Override
+        public BlockingQueue<Runnable> create(int capacity) {
+            return new SpillingQueue(capacity);
+        }
+        
     };
     
     /**
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Tasks implementing this interface carry a routing key. Executors configured
+ * using {@link EventLoopModule} run all tasks with equal keys on the same loop,
+ * in submission order.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface Routable {
+
+    /**
+     * Returns the routing key of this task.
+     * 
+     * @return the routing key, may be null for round robin routing
+     */
+    Object getRoutingKey();
+    
+}
@@ -16,7 +16,9 @@
 
 package de.cosmocode.palava.concurrent;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
+import java.util.Set;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -28,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.google.inject.Key;
 import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 
 import de.cosmocode.palava.core.inject.AbstractRebindModule;
@@ -41,9 +44,14 @@ import de.cosmocode.palava.core.inject.AbstractRebindModule;
 public final class SchedulerModule extends AbstractRebindModule {
 
     private static final Logger LOG = LoggerFactory.getLogger(SchedulerModule.class);
+    
+    private static final TypeLiteral<Set<ExecutorInterceptor>> INTERCEPTORS = 
+        new TypeLiteral<Set<ExecutorInterceptor>>() { };
 
     private final Key<ScheduledExecutorService> key;
     
+    private final Key<JobScheduler> jobSchedulerKey;
+    
     private final String name;
     
     private final ExecutorConfig config;
@@ -62,6 +70,7 @@ public final class SchedulerModule extends AbstractRebindModule {
     public SchedulerModule(Class<? extends Annotation> annotation, String name) {
         Preconditions.checkNotNull(annotation, "Annotation");
         this.key = Key.get(ScheduledExecutorService.class, annotation);
+        this.jobSchedulerKey = Key.get(JobScheduler.class, annotation);
         this.name = Preconditions.checkNotNull(name, "Name");
         this.config = ExecutorConfig.named(name);
     }
@@ -69,6 +78,7 @@ public final class SchedulerModule extends AbstractRebindModule {
     public SchedulerModule(Annotation annotation, String name) {
         Preconditions.checkNotNull(annotation, "Annotation");
         this.key = Key.get(ScheduledExecutorService.class, annotation);
+        this.jobSchedulerKey = Key.get(JobScheduler.class, annotation);
         this.name = Preconditions.checkNotNull(name, "Name");
         this.config = ExecutorConfig.named(name);
     }
@@ -96,16 +106,40 @@ public final class SchedulerModule extends AbstractRebindModule {
         
         bind(RejectedExecutionHandler.class).annotatedWith(Names.named(ExecutorConfig.REJECTION_HANDLER)).to(
             Key.get(RejectedExecutionHandler.class, Names.named(config.threadFactory())));
+        
+        bind(long.class).annotatedWith(Names.named(ExecutorConfig.KEEP_ALIVE_TIME)).to(
+            Key.get(long.class, Names.named(config.keepAliveTime())));
+        
+        bind(TimeUnit.class).annotatedWith(Names.named(ExecutorConfig.KEEP_ALIVE_TIME_UNIT)).to(
+            Key.get(TimeUnit.class, Names.named(config.keepAliveTimeUnit())));
+        
+        bind(boolean.class).annotatedWith(Names.named(ExecutorConfig.ALLOW_CORE_THREAD_TIMEOUT)).to(
+            Key.get(boolean.class, Names.named(config.allowCoreThreadTimeout())));
+        
+        bind(File.class).annotatedWith(Names.named(ExecutorConfig.JOURNAL)).to(
+            Key.get(File.class, Names.named(config.journal())));
+        
+        bind(long.class).annotatedWith(Names.named(ExecutorConfig.JOURNAL_COMPACTION_INTERVAL)).to(
+            Key.get(long.class, Names.named(config.journalCompactionInterval())));
+        
+        bind(TimeUnit.class).annotatedWith(Names.named(ExecutorConfig.JOURNAL_COMPACTION_INTERVAL_UNIT)).to(
+            Key.get(TimeUnit.class, Names.named(config.journalCompactionIntervalUnit())));
+        
+        bind(INTERCEPTORS).annotatedWith(Names.named(ExecutorConfig.INTERCEPTORS)).to(
+            Key.get(INTERCEPTORS, Names.named(config.interceptors())));
     }
     
     @Override
     protected void bindings() {
         bind(key).to(ConfigurableScheduledExecutorService.class).in(Singleton.class);
+        bind(jobSchedulerKey).to(ConfigurableScheduledExecutorService.class);
+        bind(ConfigurableScheduledExecutorService.class).in(Singleton.class);
     }
     
     @Override
     protected void expose() {
         expose(key);
+        expose(jobSchedulerKey);
     }
 
 }
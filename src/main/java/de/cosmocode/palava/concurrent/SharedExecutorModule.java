@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Key;
+import com.google.inject.Singleton;
+import com.google.inject.name.Names;
+
+import de.cosmocode.palava.core.inject.AbstractRebindModule;
+
+/**
+ * This module binds a named {@link ExecutorService} which doesn't own any threads
+ * but runs its tasks on the worker threads shared by all executors configured
+ * using this module. The size of the shared pool is configured using
+ * {@link ExecutorConfig#SHARED_POOL_SIZE}.
+ * 
+ * <p>
+ *   Every shared executor has a weight (defaults to 1), a minimum concurrency
+ *   (defaults to 0) and a maximum concurrency (defaults to the pool size).
+ *   Free workers prefer executors running less than their minimum concurrency
+ *   and pick tasks weighted-fair otherwise. The minimum is a priority, not a
+ *   reservation: workers busy with long running tasks of other executors are not
+ *   preempted. The minimums of all shared executors must not exceed the pool size.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class SharedExecutorModule extends AbstractRebindModule {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedExecutorModule.class);
+
+    private final Key<ExecutorService> key;
+    
+    private final String name;
+
+    private final ExecutorConfig config;
+    
+    /**
+     * Creates a new {@link SharedExecutorModule} which uses the given name to rebind configuration
+     * entries and binds the configured {@link ExecutorService} using {@link Names#named(String)}.
+     * 
+     * @param name the desired name
+     */
+    public SharedExecutorModule(String name) {
+        this(Names.named(name), name);
+    }
+    
+    public SharedExecutorModule(Class<? extends Annotation> annotation, String name) {
+        this.key = Key.get(ExecutorService.class, Preconditions.checkNotNull(annotation, "Annotation"));
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.config = ExecutorConfig.named(name);
+    }
+    
+    public SharedExecutorModule(Annotation annotation, String name) {
+        this.key = Key.get(ExecutorService.class, Preconditions.checkNotNull(annotation, "Annotation"));
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.config = ExecutorConfig.named(name);
+    }
+    
+    @Override
+    protected void configuration() {
+        LOG.trace("Binding shared executor configuration for {} using name {}", key, name);
+
+        bind(String.class).annotatedWith(Names.named(ExecutorConfig.NAME)).toInstance(name);
+
+        bind(long.class).annotatedWith(Names.named(ExecutorConfig.SHUTDOWN_TIMEOUT)).to(
+            Key.get(long.class, Names.named(config.shutdownTimeout())));
+        
+        bind(TimeUnit.class).annotatedWith(Names.named(ExecutorConfig.SHUTDOWN_TIMEOUT_UNIT)).to(
+            Key.get(TimeUnit.class, Names.named(config.shutdownTimeoutUnit())));
+    }
+    
+    @Override
+    protected void optionals() {
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.WEIGHT)).to(
+            Key.get(int.class, Names.named(config.weight())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.MIN_CONCURRENCY)).to(
+            Key.get(int.class, Names.named(config.minConcurrency())));
+        
+        bind(int.class).annotatedWith(Names.named(ExecutorConfig.MAX_CONCURRENCY)).to(
+            Key.get(int.class, Names.named(config.maxConcurrency())));
+    }
+    
+    @Override
+    protected void bindings() {
+        bind(key).to(SharedExecutorService.class).in(Singleton.class);
+    }
+    
+    @Override
+    protected void expose() {
+        expose(key);
+    }
+    
+}
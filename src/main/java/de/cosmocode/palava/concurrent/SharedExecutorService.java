@@ -0,0 +1,217 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.jmx.MBeanService;
+
+/**
+ * A lightweight {@link ExecutorService} which runs its tasks on the
+ * worker threads of the {@link SharedWorkerPool}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class SharedExecutorService extends AbstractExecutorService implements Initializable, Disposable,
+    SharedExecutorServiceMBean {
+
+    private final String name;
+    
+    private final SharedWorkerPool pool;
+    
+    private final long shutdownTimeout;
+    
+    private final TimeUnit shutdownTimeoutUnit;
+    
+    private final MBeanService mBeanService;
+    
+    private final ShutdownCoordinator coordinator;
+    
+    private ThreadProvider provider;
+    
+    private ContextPropagator propagator;
+    
+    private int weight = 1;
+    
+    private int minConcurrency;
+    
+    private int maxConcurrency;
+    
+    // guarded by the lock of the pool
+    
+    final Deque<Runnable> queue = Lists.newLinkedList();
+    
+    final Set<Thread> threads = Sets.newHashSet();
+    
+    volatile int running;
+    
+    volatile long completed;
+    
+    long pass;
+    
+    volatile boolean shutdown;
+    
+    @Inject
+    public SharedExecutorService(
+        @Named(ExecutorConfig.NAME) String name,
+        SharedWorkerPool pool,
+        @Named(ExecutorConfig.SHUTDOWN_TIMEOUT) long shutdownTimeout,
+        @Named(ExecutorConfig.SHUTDOWN_TIMEOUT_UNIT) TimeUnit shutdownTimeoutUnit,
+        MBeanService mBeanService,
+        ShutdownCoordinator coordinator) {
+        
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.pool = Preconditions.checkNotNull(pool, "Pool");
+        this.shutdownTimeout = shutdownTimeout;
+        this.shutdownTimeoutUnit = Preconditions.checkNotNull(shutdownTimeoutUnit, "ShutdownTimeoutUnit");
+        this.mBeanService = Preconditions.checkNotNull(mBeanService, "MBeanService");
+        this.coordinator = Preconditions.checkNotNull(coordinator, "Coordinator");
+        this.maxConcurrency = pool.getSize();
+    }
+    
+    @Inject(optional = true)
+    void setThreadProvider(ThreadProvider provider) {
+        this.provider = Preconditions.checkNotNull(provider, "Provider");
+    }
+    
+    @Inject(optional = true)
+    void setContextPropagator(ContextPropagator propagator) {
+        this.propagator = Preconditions.checkNotNull(propagator, "Propagator");
+    }
+    
+    @Inject(optional = true)
+    void setWeight(@Named(ExecutorConfig.WEIGHT) int weight) {
+        Preconditions.checkArgument(weight > 0, "Weight must be positive, but was %s", weight);
+        this.weight = weight;
+    }
+    
+    @Inject(optional = true)
+    void setMinConcurrency(@Named(ExecutorConfig.MIN_CONCURRENCY) int minConcurrency) {
+        Preconditions.checkArgument(minConcurrency >= 0, "MinConcurrency must not be negative");
+        this.minConcurrency = minConcurrency;
+    }
+    
+    @Inject(optional = true)
+    void setMaxConcurrency(@Named(ExecutorConfig.MAX_CONCURRENCY) int maxConcurrency) {
+        Preconditions.checkArgument(maxConcurrency > 0, "MaxConcurrency must be positive");
+        this.maxConcurrency = maxConcurrency;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        Preconditions.checkState(minConcurrency <= maxConcurrency, 
+            "MinConcurrency %s must not exceed MaxConcurrency %s", minConcurrency, maxConcurrency);
+        pool.register(this);
+        coordinator.register(this, this, shutdownTimeout, shutdownTimeoutUnit);
+        mBeanService.register(this, "name", name);
+    }
+    
+    @Override
+    public void execute(Runnable command) {
+        pool.submit(this, propagator == null ? command : propagator.propagate(command));
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown(this);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return pool.shutdownNow(this);
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated(this);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(this, timeout, unit);
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public int getWeight() {
+        return weight;
+    }
+    
+    @Override
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+    
+    @Override
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+    
+    @Override
+    public int getActiveCount() {
+        return running;
+    }
+    
+    @Override
+    public int getQueueSize() {
+        return pool.queueSize(this);
+    }
+    
+    @Override
+    public long getCompletedTaskCount() {
+        return completed;
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        try {
+            mBeanService.unregister(this, "name", name);
+        } finally {
+            coordinator.shutdown(this);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SharedExecutorService [%s]", name);
+    }
+    
+}
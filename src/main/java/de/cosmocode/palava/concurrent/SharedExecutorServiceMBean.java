@@ -0,0 +1,77 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link SharedExecutorService}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface SharedExecutorServiceMBean {
+
+    /**
+     * Returns the name of this executor.
+     * 
+     * @return the name
+     */
+    String getName();
+    
+    /**
+     * Returns the weight of this executor.
+     * 
+     * @return the weight
+     */
+    int getWeight();
+    
+    /**
+     * Returns the number of concurrently running tasks below which this executor
+     * is served before all others. This is a priority, not a reservation.
+     * 
+     * @return the minimum concurrency
+     */
+    int getMinConcurrency();
+    
+    /**
+     * Returns the maximum number of concurrently running tasks.
+     * 
+     * @return the maximum concurrency
+     */
+    int getMaxConcurrency();
+    
+    /**
+     * Returns the number of currently running tasks.
+     * 
+     * @return the number of running tasks
+     */
+    int getActiveCount();
+    
+    /**
+     * Returns the number of queued tasks.
+     * 
+     * @return the number of queued tasks
+     */
+    int getQueueSize();
+    
+    /**
+     * Returns the number of completed tasks.
+     * 
+     * @return the number of completed tasks
+     */
+    long getCompletedTaskCount();
+    
+}
@@ -0,0 +1,402 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * A fixed number of worker threads shared by all {@link SharedExecutorService}s.
+ * 
+ * <p>
+ *   Free workers first serve executors which run less tasks than their minimum
+ *   concurrency. This is a priority, not a reservation: a worker running a long task
+ *   of another executor is not preempted, so an executor may wait for its minimum
+ *   until workers become free. To keep all minimums satisfiable at once, their sum
+ *   must not exceed the pool size. All other executors are served using stride scheduling: every
+ *   dispatched task advances the executor's virtual time by the inverse of its weight
+ *   and the executor with the lowest virtual time goes next. Executors which reached
+ *   their maximum concurrency are skipped. Workers are started with the first
+ *   registered executor and stopped once all registered executors terminated. A worker
+ *   killed by an error thrown from a task is replaced by a new one.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+@Singleton
+final class SharedWorkerPool implements Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedWorkerPool.class);
+    
+    private static final long STRIDE = 1L << 20;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private final Condition available = lock.newCondition();
+    
+    private final Condition finished = lock.newCondition();
+    
+    private final List<SharedExecutorService> views = Lists.newArrayList();
+    
+    private final List<Thread> workers = Lists.newArrayList();
+    
+    private ThreadFactory factory = Executors.defaultThreadFactory();
+    
+    private int size = Runtime.getRuntime().availableProcessors();
+    
+    private long virtualTime;
+    
+    /**
+     * Incremented whenever all workers should stop.
+     */
+    private int generation;
+    
+    @Inject(optional = true)
+    void setThreadProvider(ThreadProvider provider) {
+        this.factory = ThreadProviders.threadFactory(provider, provider, "shared");
+    }
+    
+    @Inject(optional = true)
+    void setSize(@Named(ExecutorConfig.SHARED_POOL_SIZE) int size) {
+        Preconditions.checkArgument(size > 0, "Size must be positive, but was %s", size);
+        this.size = size;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * Registers the given view and starts all workers if necessary.
+     * 
+     * @param view the new view
+     * @throws IllegalStateException if the minimum concurrencies of all views would exceed the pool size
+     */
+    public void register(SharedExecutorService view) {
+        lock.lock();
+        try {
+            int minimum = view.getMinConcurrency();
+            for (SharedExecutorService other : views) {
+                minimum += other.getMinConcurrency();
+            }
+            Preconditions.checkState(minimum <= size,
+                "MinConcurrency of %s exceeds the pool size %s, all executors require %s", view, size, minimum);
+            views.add(view);
+            if (workers.isEmpty()) {
+                LOG.info("Starting {} shared worker(s)", size);
+                for (int i = 0; i < size; i++) {
+                    start();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Enqueues the given task for the given view.
+     * 
+     * @param view the owning view
+     * @param task the task
+     * @throws RejectedExecutionException if view has been shut down
+     */
+    public void submit(SharedExecutorService view, Runnable task) {
+        Preconditions.checkNotNull(task, "Task");
+        lock.lock();
+        try {
+            if (view.shutdown) {
+                throw new RejectedExecutionException(view + " has been shut down");
+            }
+            if (view.queue.isEmpty()) {
+                // idle views must not catch up on the time they didn't use
+                view.pass = Math.max(view.pass, virtualTime);
+            }
+            view.queue.add(task);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Shuts the given view down. Already queued tasks will still be executed.
+     * 
+     * @param view the view
+     */
+    public void shutdown(SharedExecutorService view) {
+        lock.lock();
+        try {
+            view.shutdown = true;
+            retire(view);
+            finished.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Shuts the given view down, interrupts all of its running tasks and
+     * removes all queued ones.
+     * 
+     * @param view the view
+     * @return all queued tasks
+     */
+    public List<Runnable> shutdownNow(SharedExecutorService view) {
+        lock.lock();
+        try {
+            view.shutdown = true;
+            final List<Runnable> tasks = Lists.newArrayList(view.queue);
+            view.queue.clear();
+            for (Thread thread : view.threads) {
+                thread.interrupt();
+            }
+            retire(view);
+            finished.signalAll();
+            return tasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Checks whether the given view has been shut down and finished all tasks.
+     * 
+     * @param view the view
+     * @return true if view is terminated
+     */
+    public boolean isTerminated(SharedExecutorService view) {
+        lock.lock();
+        try {
+            return terminated(view);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Waits for the given view to terminate.
+     * 
+     * @param view the view
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return true if view terminated, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(SharedExecutorService view, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!terminated(view)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = finished.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Returns the number of queued tasks of the given view.
+     * 
+     * @param view the view
+     * @return the queue size of view
+     */
+    public int queueSize(SharedExecutorService view) {
+        lock.lock();
+        try {
+            return view.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private boolean terminated(SharedExecutorService view) {
+        return view.shutdown && view.queue.isEmpty() && view.running == 0;
+    }
+    
+    /**
+     * Removes the given view if it terminated and stops all workers if it was the
+     * last one. Must be called while holding the lock.
+     * 
+     * @param view the view
+     */
+    private void retire(SharedExecutorService view) {
+        if (terminated(view) && views.remove(view) && views.isEmpty()) {
+            LOG.info("Stopping {} shared worker(s)", workers.size());
+            generation++;
+            workers.clear();
+            available.signalAll();
+        }
+    }
+    
+    /**
+     * Starts a new worker. Must be called while holding the lock.
+     */
+    private void start() {
+        final Thread worker = factory.newThread(new Worker(generation));
+        workers.add(worker);
+        worker.start();
+    }
+    
+    /**
+     * Replaces the given worker which is about to die because its task threw an
+     * error. Must be called while holding the lock.
+     * 
+     * @param worker the dying worker
+     */
+    private void replace(Thread worker) {
+        if (workers.remove(worker)) {
+            LOG.warn("Replacing {} which is about to die", worker);
+            start();
+        }
+    }
+    
+    /**
+     * Selects the view which should run next. Must be called while holding the lock.
+     * 
+     * @return the next view or null if there is no runnable task
+     */
+    private SharedExecutorService select() {
+        SharedExecutorService preferred = null;
+        SharedExecutorService fair = null;
+        for (SharedExecutorService view : views) {
+            if (view.queue.isEmpty() || view.running >= view.getMaxConcurrency()) {
+                continue;
+            }
+            if (view.running < view.getMinConcurrency()) {
+                if (preferred == null || view.pass < preferred.pass) {
+                    preferred = view;
+                }
+            } else if (fair == null || view.pass < fair.pass) {
+                fair = view;
+            }
+        }
+        return preferred == null ? fair : preferred;
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        lock.lock();
+        try {
+            generation++;
+            workers.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SharedWorkerPool [%s]", size);
+    }
+    
+    /**
+     * A shared worker.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private final class Worker implements Runnable {
+        
+        private final int started;
+        
+        public Worker(int generation) {
+            this.started = generation;
+        }
+        
+        @Override
+        public void run() {
+            final Thread current = Thread.currentThread();
+            while (true) {
+                final SharedExecutorService view;
+                final Runnable task;
+                lock.lock();
+                try {
+                    SharedExecutorService next = select();
+                    while (next == null) {
+                        if (generation != started) {
+                            return;
+                        }
+                        available.awaitUninterruptibly();
+                        next = select();
+                    }
+                    view = next;
+                    task = view.queue.poll();
+                    view.running++;
+                    view.pass += STRIDE / view.getWeight();
+                    virtualTime = view.pass;
+                    view.threads.add(current);
+                } finally {
+                    lock.unlock();
+                }
+                
+                boolean completed = false;
+                try {
+                    task.run();
+                    completed = true;
+                /* CHECKSTYLE:OFF */
+                } catch (RuntimeException e) {
+                /* CHECKSTYLE:ON */
+                    LOG.error("Uncaught exception in task " + task + " of " + view, e);
+                    completed = true;
+                } finally {
+                    lock.lock();
+                    try {
+                        view.running--;
+                        view.completed++;
+                        // shutdownNow can't interrupt us for this task anymore
+                        view.threads.remove(current);
+                        if (!completed) {
+                            replace(current);
+                        }
+                        retire(view);
+                        finished.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    // don't leak interrupts into the next task
+                    Thread.interrupted();
+                }
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+
+/**
+ * A {@link ThreadPoolExecutor} which keeps queue latency bounded by rejecting new tasks
+ * while the queue is considered overloaded, following the idea of CoDel: the minimum time
+ * tasks spent in the queue (sojourn time) is tracked per interval. If even that minimum
+ * exceeds the target, the queue is standing rather than absorbing a burst and all new tasks
+ * are passed to the {@link RejectedExecutionHandler} until an interval ends with a
+ * minimum below the target.
+ * <p>
+ *   Tasks are queued as they are, so queue modes relying on the task type, like
+ *   {@link QueueMode#PRIORITY}, and {@link #remove(Runnable)} keep working. Enqueue times
+ *   are kept by identity on the side. If the same instance is queued more than once
+ *   at the same time, only one of its executions is sampled.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class SheddingThreadPoolExecutor extends InstrumentedThreadPoolExecutor 
+    implements SheddingThreadPoolExecutorMBean {
+
+    private final long target;
+    
+    private final long interval;
+    
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    
+    private final AtomicLong minSojournTime = new AtomicLong(Long.MAX_VALUE);
+    
+    private final AtomicLong shed = new AtomicLong();
+    
+    private final ConcurrentMap<Runnable, Long> enqueued = new MapMaker().weakKeys().makeMap();
+    
+    private volatile long lastMinSojournTime;
+    
+    private volatile long lastDequeue = System.nanoTime();
+    
+    private volatile boolean overloaded;
+    
+    public SheddingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+        BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler,
+        long target, long interval, TimeUnit sheddingUnit) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        Preconditions.checkArgument(target > 0, "Target must be positive, but was %s", target);
+        Preconditions.checkArgument(interval > 0, "Interval must be positive, but was %s", interval);
+        this.target = sheddingUnit.toNanos(target);
+        this.interval = sheddingUnit.toNanos(interval);
+    }
+    
+    @Override
+    public void execute(Runnable command) {
+        Preconditions.checkNotNull(command, "Command");
+        if (isOverloaded(System.nanoTime())) {
+            shed.incrementAndGet();
+            getRejectedExecutionHandler().rejectedExecution(command, this);
+        } else {
+            enqueued.put(command, System.nanoTime());
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                enqueued.remove(command);
+                throw e;
+            }
+        }
+    }
+    
+    @Override
+    public boolean remove(Runnable task) {
+        final boolean removed = super.remove(task);
+        if (removed) {
+            enqueued.remove(task);
+        }
+        return removed;
+    }
+    
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> tasks = super.shutdownNow();
+        enqueued.clear();
+        return tasks;
+    }
+    
+    private boolean isOverloaded(long now) {
+        if (overloaded && now - lastDequeue > interval) {
+            // nothing has been dequeued for a whole interval, so we can't be standing
+            overloaded = false;
+        }
+        return overloaded;
+    }
+    
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        final Long since = enqueued.remove(r);
+        if (since != null) {
+            final long now = System.nanoTime();
+            lastDequeue = now;
+            sample(now - since.longValue(), now);
+        }
+    }
+    
+    private void sample(long sojournTime, long now) {
+        while (true) {
+            final long min = minSojournTime.get();
+            if (sojournTime >= min || minSojournTime.compareAndSet(min, sojournTime)) {
+                break;
+            }
+        }
+        final long start = intervalStart.get();
+        if (now - start >= interval && intervalStart.compareAndSet(start, now)) {
+            final long min = minSojournTime.getAndSet(Long.MAX_VALUE);
+            lastMinSojournTime = min;
+            overloaded = min > target;
+        }
+    }
+    
+    @Override
+    public long getTarget() {
+        return TimeUnit.NANOSECONDS.toMicros(target);
+    }
+    
+    @Override
+    public long getInterval() {
+        return TimeUnit.NANOSECONDS.toMicros(interval);
+    }
+    
+    @Override
+    public long getMinSojournTime() {
+        return TimeUnit.NANOSECONDS.toMicros(lastMinSojournTime);
+    }
+    
+    @Override
+    public boolean isOverloaded() {
+        return isOverloaded(System.nanoTime());
+    }
+    
+    @Override
+    public long getShedCount() {
+        return shed.get();
+    }
+    
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link SheddingThreadPoolExecutor}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface SheddingThreadPoolExecutorMBean {
+
+    /**
+     * Returns the queue latency target.
+     * 
+     * @return the target in microseconds
+     */
+    long getTarget();
+    
+    /**
+     * Returns the interval in which the minimum queue latency is tracked.
+     * 
+     * @return the interval in microseconds
+     */
+    long getInterval();
+    
+    /**
+     * Returns the minimum queue latency of the last completed interval.
+     * 
+     * @return the minimum queue latency in microseconds
+     */
+    long getMinSojournTime();
+    
+    /**
+     * Returns whether new tasks are currently being rejected.
+     * 
+     * @return true if overloaded, false otherwise
+     */
+    boolean isOverloaded();
+    
+    /**
+     * Returns the number of tasks which have been rejected due to queue latency.
+     * 
+     * @return the number of shed tasks
+     */
+    long getShedCount();
+    
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Shuts down executors created by {@link ExecutorModule} and {@link SchedulerModule}
+ * within one global deadline, which starts with the first shutdown.
+ * 
+ * <p>
+ *   Disposing an executor only initiates its shutdown, i.e. it rejects new tasks
+ *   but keeps running queued ones, so no executor waits for its own pool. This
+ *   coordinator is disposed after all executors which depend on it. It initiates
+ *   the shutdown of the executors which are still running and awaits all of them in
+ *   one pass against the global deadline, each up to its own shutdown timeout counted
+ *   from its own shutdown. Executors which didn't terminate in time are forced to shut
+ *   down in dependency order, i.e. in reverse registration order, because executors
+ *   created later may submit to earlier ones. Finally the cleanup of every executor
+ *   runs and the executors which still held tasks are reported.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+@Singleton
+final class ShutdownCoordinator implements Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShutdownCoordinator.class);
+    
+    private final Map<Object, Entry> entries = Maps.newLinkedHashMap();
+    
+    private long deadline = -1L;
+    
+    private TimeUnit deadlineUnit = TimeUnit.SECONDS;
+    
+    /**
+     * The start of the first shutdown, -1 if none happened yet.
+     */
+    private long started = -1L;
+    
+    private long global;
+    
+    private boolean disposed;
+    
+    @Inject(optional = true)
+    void setDeadline(@Named(ExecutorConfig.SHUTDOWN_DEADLINE) long deadline) {
+        this.deadline = deadline;
+    }
+    
+    @Inject(optional = true)
+    void setDeadlineUnit(@Named(ExecutorConfig.SHUTDOWN_DEADLINE_UNIT) TimeUnit deadlineUnit) {
+        this.deadlineUnit = Preconditions.checkNotNull(deadlineUnit, "DeadlineUnit");
+    }
+    
+    /**
+     * Registers an executor which should be shut down by this coordinator.
+     * 
+     * @param owner the owner, used for logging and to shut it down
+     * @param executor the executor
+     * @param timeout the shutdown timeout of executor
+     * @param unit the unit of timeout
+     */
+    public void register(Object owner, ExecutorService executor, long timeout, TimeUnit unit) {
+        register(owner, executor, timeout, unit, null);
+    }
+    
+    /**
+     * Registers an executor which should be shut down by this coordinator.
+     * 
+     * @param owner the owner, used for logging and to shut it down
+     * @param executor the executor
+     * @param timeout the shutdown timeout of executor
+     * @param unit the unit of timeout
+     * @param cleanup an optional action which runs once executor terminated or was forced to
+     */
+    public void register(Object owner, ExecutorService executor, long timeout, TimeUnit unit, Runnable cleanup) {
+        Preconditions.checkNotNull(owner, "Owner");
+        Preconditions.checkNotNull(executor, "Executor");
+        Preconditions.checkNotNull(unit, "Unit");
+        final Entry entry = new Entry(owner, executor, unit.toNanos(timeout), cleanup);
+        synchronized (this) {
+            if (!disposed) {
+                entries.put(owner, entry);
+                return;
+            }
+        }
+        LOG.warn("{} registered after shutdown, shutting it down immediately", owner);
+        force(entry);
+        cleanup(entry);
+    }
+    
+    /**
+     * Starts the global deadline if necessary.
+     * Must be called while holding the lock.
+     */
+    private void start() {
+        if (started == -1L) {
+            started = System.nanoTime();
+            global = deadline < 0 ? maxTimeout() : deadlineUnit.toNanos(deadline);
+        }
+    }
+    
+    /**
+     * Initiates the shutdown of the executor registered by the given owner without
+     * waiting for it. Awaiting and forcing happens when this coordinator is disposed.
+     * Does nothing if owner didn't register an executor or has already been shut down.
+     * 
+     * @param owner the owner
+     */
+    public void shutdown(Object owner) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(owner);
+            if (entry == null || entry.since != -1L) {
+                return;
+            }
+            start();
+            entry.since = System.nanoTime();
+        }
+        entry.executor.shutdown();
+        LOG.info("Initiated shutdown of {}", owner);
+    }
+    
+    /**
+     * Shuts down all executors which are still running, awaits all executors within the
+     * global deadline and forces those which didn't terminate in time.
+     * Subsequent registrations are shut down immediately.
+     */
+    @Override
+    public void dispose() throws LifecycleException {
+        final List<Entry> all;
+        final List<Entry> running = Lists.newArrayList();
+        final long end;
+        synchronized (this) {
+            disposed = true;
+            start();
+            end = started + global;
+            all = Lists.newArrayList(entries.values());
+            entries.clear();
+            for (Entry entry : all) {
+                if (entry.since == -1L) {
+                    entry.since = System.nanoTime();
+                    running.add(entry);
+                }
+            }
+        }
+        if (all.isEmpty()) {
+            return;
+        }
+        
+        LOG.info("Shutting down {} remaining executor(s), awaiting {} executor(s)", running.size(), all.size());
+        for (Entry entry : running) {
+            entry.executor.shutdown();
+        }
+        
+        final long start = System.nanoTime();
+        final List<Entry> pending = Lists.newArrayList();
+        boolean interrupted = false;
+        for (Entry entry : all) {
+            // all deadlines are absolute, so waiting on one after another waits in parallel
+            final long timeout = Math.min(entry.since + entry.timeoutNanos, end) - System.nanoTime();
+            try {
+                if (entry.executor.awaitTermination(Math.max(0L, timeout), TimeUnit.NANOSECONDS)) {
+                    LOG.info("{} terminated successfully", entry.owner);
+                } else {
+                    pending.add(entry);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                pending.add(entry);
+            }
+        }
+        
+        final List<Object> forced = Lists.newArrayList();
+        for (Entry entry : Lists.reverse(pending)) {
+            force(entry);
+            forced.add(entry.owner);
+        }
+        
+        for (Entry entry : all) {
+            cleanup(entry);
+        }
+        
+        if (forced.isEmpty()) {
+            LOG.info("Shut down {} executor(s) in {}ms", all.size(), 
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+            LOG.warn("Shut down {} executor(s) in {}ms, {} still held tasks and were forced: {}", new Object[] {
+                all.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), forced.size(), forced
+            });
+        }
+        
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void force(Entry entry) {
+        final List<Runnable> tasks = entry.executor.shutdownNow();
+        LOG.warn("{} was forced to shutdown before finish, {} queued task(s) dropped", entry.owner, tasks.size());
+    }
+    
+    private void cleanup(Entry entry) {
+        if (entry.cleanup == null) {
+            return;
+        }
+        try {
+            entry.cleanup.run();
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            LOG.error("Cleanup of " + entry.owner + " failed", e);
+        }
+    }
+    
+    private long maxTimeout() {
+        long max = 0L;
+        for (Entry entry : entries.values()) {
+            max = Math.max(max, entry.timeoutNanos);
+        }
+        return max;
+    }
+    
+    /**
+     * A registered executor.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Entry {
+        
+        private final Object owner;
+        
+        private final ExecutorService executor;
+        
+        private final long timeoutNanos;
+        
+        private final Runnable cleanup;
+        
+        /**
+         * The start of the shutdown of this executor, -1 if still running. Guarded by the coordinator.
+         */
+        private long since = -1L;
+        
+        public Entry(Object owner, ExecutorService executor, long timeoutNanos, Runnable cleanup) {
+            this.owner = owner;
+            this.executor = executor;
+            this.timeoutNanos = timeoutNanos;
+            this.cleanup = cleanup;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * A linked multi producer/single consumer {@link BlockingQueue}. Producers
+ * are wait free: an offer consists of one atomic increment of the size and one
+ * atomic swap of the last node. Consumer operations are serialized using the
+ * monitor of this queue, which is uncontended as long as there is only one
+ * consumer. This queue must only be used by pools with exactly one thread,
+ * because there is at most one blocked consumer which gets signalled.
+ * 
+ * <p>
+ *   Removed elements are nulled out rather than unlinked and skipped by
+ *   the consumer later on.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class SingleConsumerQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final int capacity;
+    
+    private final AtomicInteger count = new AtomicInteger();
+    
+    /**
+     * The last node, written by producers.
+     */
+    private final AtomicReference<Node> last;
+    
+    /**
+     * The stub node whose successor is the first element, guarded by this.
+     */
+    private Node first;
+    
+    private volatile Thread waiter;
+    
+    public SingleConsumerQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, but was %s", capacity);
+        this.capacity = capacity;
+        this.first = new Node(null);
+        this.last = new AtomicReference<Node>(first);
+    }
+    
+    @Override
+    public boolean offer(Runnable e) {
+        Preconditions.checkNotNull(e, "Element");
+        if (count.getAndIncrement() >= capacity) {
+            count.decrementAndGet();
+            return false;
+        }
+        final Node node = new Node(e);
+        last.getAndSet(node).next = node;
+        final Thread consumer = waiter;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(e)) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            // producers are never signalled, bounded queues are expected to reject instead
+            LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public void put(Runnable e) throws InterruptedException {
+        while (!offer(e)) {
+            LockSupport.parkNanos(this, MAX_PARK);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+    
+    @Override
+    public synchronized Runnable poll() {
+        while (true) {
+            final Node next = first.next;
+            if (next == null) {
+                return null;
+            }
+            first = next;
+            final Runnable value = next.value;
+            if (value != null) {
+                next.value = null;
+                count.decrementAndGet();
+                return value;
+            }
+        }
+    }
+    
+    @Override
+    public Runnable take() throws InterruptedException {
+        while (true) {
+            final Runnable value = await();
+            if (value != null) {
+                return value;
+            }
+            LockSupport.park(this);
+            waiter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+    
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            final Runnable value = await();
+            if (value != null) {
+                return value;
+            }
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                waiter = null;
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+            waiter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+    
+    /**
+     * Polls an element and registers the current thread as waiter if there is none.
+     * 
+     * @return the polled element or null if the caller should park
+     */
+    private Runnable await() {
+        final Runnable value = poll();
+        if (value != null) {
+            return value;
+        }
+        waiter = Thread.currentThread();
+        // an offer which didn't see us as waiter must be visible now
+        final Runnable recheck = poll();
+        if (recheck != null) {
+            waiter = null;
+        }
+        return recheck;
+    }
+    
+    @Override
+    public synchronized Runnable peek() {
+        for (Node node = first.next; node != null; node = node.next) {
+            if (node.value != null) {
+                return node.value;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public synchronized boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        for (Node node = first.next; node != null; node = node.next) {
+            if (o.equals(node.value)) {
+                node.value = null;
+                count.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public synchronized int drainTo(Collection<? super Runnable> c, int maxElements) {
+        Preconditions.checkNotNull(c, "Collection");
+        Preconditions.checkArgument(c != this, "Can't drain to myself");
+        int drained = 0;
+        while (drained < maxElements) {
+            final Runnable value = poll();
+            if (value == null) {
+                break;
+            }
+            c.add(value);
+            drained++;
+        }
+        return drained;
+    }
+    
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot;
+        synchronized (this) {
+            snapshot = Lists.newArrayList();
+            for (Node node = first.next; node != null; node = node.next) {
+                final Runnable value = node.value;
+                if (value != null) {
+                    snapshot.add(value);
+                }
+            }
+        }
+        final Iterator<Runnable> iterator = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            
+            private Runnable current;
+            
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+            
+            @Override
+            public Runnable next() {
+                current = iterator.next();
+                return current;
+            }
+            
+            @Override
+            public void remove() {
+                Preconditions.checkState(current != null, "next() has not been called");
+                SingleConsumerQueue.this.remove(current);
+                current = null;
+            }
+            
+        };
+    }
+    
+    @Override
+    public int size() {
+        return Math.min(count.get(), capacity);
+    }
+    
+    @Override
+    public int remainingCapacity() {
+        return capacity == Integer.MAX_VALUE ? Integer.MAX_VALUE : Math.max(0, capacity - count.get());
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SingleConsumerQueue [size=%s, capacity=%s]", size(), capacity);
+    }
+    
+    /**
+     * A linked node.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Node {
+        
+        private Runnable value;
+        
+        private volatile Node next;
+        
+        public Node(Runnable value) {
+            this.value = value;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,633 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * An unbounded {@link BlockingQueue} which keeps at most threshold tasks on the heap
+ * and spills all further {@link Serializable} tasks to memory mapped segment files.
+ * Spilled tasks are restored in FIFO order once workers catch up. While tasks are
+ * spilled, non serializable tasks are rejected, because queueing them on the heap would
+ * break both ordering and the fixed heap footprint.
+ *
+ * <p>
+ *   {@link #remove(Object)}, {@link #contains(Object)} and {@link #iterator()} only
+ *   cover the tasks currently held on the heap.
+ * </p>
+ *
+ * <p>
+ *   Spilled tasks don't survive the queue. {@link #close()} deletes all segments,
+ *   including those still holding spilled tasks, and reports how many were discarded.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class SpillingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>, SpillingQueueMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillingQueue.class);
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final int threshold;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final Deque<Runnable> memory = Lists.newLinkedList();
+
+    private final Deque<Segment> segments = Lists.newLinkedList();
+
+    private final Rate spillRate = new Rate();
+
+    private final Rate restoreRate = new Rate();
+
+    private File directory = new File(System.getProperty("java.io.tmpdir"));
+
+    private int spilled;
+
+    private long spills;
+
+    private long restores;
+    
+    private long rejections;
+    
+    private int sequence;
+
+    public SpillingQueue(int threshold) {
+        Preconditions.checkArgument(threshold > 0, "Threshold must be positive, but was %s", threshold);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Sets the directory for segment files. Must be called before the first task is spilled.
+     *
+     * @param directory the segment directory
+     */
+    void setDirectory(File directory) {
+        Preconditions.checkNotNull(directory, "Directory");
+        Preconditions.checkArgument(directory.isDirectory() || directory.mkdirs(),
+            "%s is not a directory", directory);
+        this.directory = directory;
+    }
+
+    private boolean enqueue(Runnable task) {
+        if (spilled == 0 && memory.size() < threshold) {
+            memory.add(task);
+        } else if (task instanceof Serializable) {
+            try {
+                spill(task);
+            } catch (IOException e) {
+                LOG.error("Unable to spill " + task, e);
+                return false;
+            }
+        } else {
+            rejections++;
+            if (rejections == 1L) {
+                LOG.warn("{} rejected non serializable task {} while spilling", this, task);
+            } else {
+                LOG.debug("{} rejected non serializable task {} while spilling", this, task);
+            }
+            return false;
+        }
+        notEmpty.signal();
+        return true;
+    }
+
+    private void spill(Runnable task) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream stream = new ObjectOutputStream(bytes);
+        stream.writeObject(task);
+        stream.close();
+        final byte[] record = bytes.toByteArray();
+
+        Segment segment = segments.peekLast();
+        if (segment == null || !segment.fits(record)) {
+            segment = new Segment(directory, sequence++, Math.max(SEGMENT_SIZE, record.length + 4));
+            segments.add(segment);
+        }
+        segment.write(record);
+        spilled++;
+        spills++;
+        spillRate.mark();
+    }
+
+    private Runnable dequeue() {
+        final Runnable task = memory.poll();
+        if (task == null) {
+            return null;
+        }
+        refill();
+        return task;
+    }
+
+    private void refill() {
+        // memory holds the oldest tasks, so refilling keeps FIFO order
+        while (spilled > 0 && memory.size() < threshold) {
+            final Runnable restored = restore();
+            if (restored != null) {
+                memory.add(restored);
+            }
+        }
+        notFull.signal();
+    }
+
+    private Runnable restore() {
+        Segment segment = segments.getFirst();
+        while (segment.isExhausted()) {
+            segments.removeFirst().delete();
+            segment = segments.getFirst();
+        }
+        final byte[] record = segment.read();
+        spilled--;
+        if (segment.isExhausted() && segments.size() > 1) {
+            segments.removeFirst().delete();
+        }
+        try {
+            final ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(record));
+            final Runnable task = Runnable.class.cast(stream.readObject());
+            restores++;
+            restoreRate.mark();
+            return task;
+        } catch (IOException e) {
+            LOG.error("Unable to restore spilled task, skipping it", e);
+            return null;
+        } catch (ClassNotFoundException e) {
+            LOG.error("Unable to restore spilled task, skipping it", e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable e) {
+        Preconditions.checkNotNull(e, "Element");
+        lock.lock();
+        try {
+            return enqueue(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+        Preconditions.checkNotNull(e, "Element");
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(e)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable e) throws InterruptedException {
+        Preconditions.checkNotNull(e, "Element");
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(e)) {
+                notFull.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (memory.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (memory.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return memory.peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            if (memory.remove(o)) {
+                refill();
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        lock.lock();
+        try {
+            return memory.contains(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        Preconditions.checkNotNull(c, "Collection");
+        Preconditions.checkArgument(c != this, "Can't drain to myself");
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements) {
+                final Runnable task = dequeue();
+                if (task == null) {
+                    break;
+                }
+                c.add(task);
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            return ImmutableList.copyOf(memory).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return memory.size() + spilled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes and deletes all segment files, discarding the tasks still spilled.
+     *
+     * @return the number of discarded tasks
+     */
+    int close() {
+        lock.lock();
+        try {
+            final int discarded = spilled;
+            if (discarded > 0) {
+                LOG.warn("{} discarded {} spilled task(s) on close", this, discarded);
+            }
+            for (Segment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            spilled = 0;
+            return discarded;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public int getMemorySize() {
+        lock.lock();
+        try {
+            return memory.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getSpilledSize() {
+        lock.lock();
+        try {
+            return spilled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getSegments() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getSpillCount() {
+        lock.lock();
+        try {
+            return spills;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getRestoreCount() {
+        lock.lock();
+        try {
+            return restores;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getRejectedCount() {
+        lock.lock();
+        try {
+            return rejections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getSpillRate() {
+        lock.lock();
+        try {
+            return spillRate.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getRestoreRate() {
+        lock.lock();
+        try {
+            return restoreRate.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SpillingQueue [threshold=%s, directory=%s]", threshold, directory);
+    }
+
+    /**
+     * Counts events per second, based on the last full second.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Rate {
+
+        private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+        private long start = System.nanoTime();
+
+        private long current;
+
+        private long last;
+
+        public void mark() {
+            roll();
+            current++;
+        }
+
+        public long get() {
+            roll();
+            return last;
+        }
+
+        private void roll() {
+            final long now = System.nanoTime();
+            final long elapsed = now - start;
+            if (elapsed >= SECOND) {
+                last = elapsed >= 2 * SECOND ? 0 : current;
+                current = 0;
+                start = now;
+            }
+        }
+
+    }
+
+    /**
+     * A memory mapped segment file of length prefixed records.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Segment {
+
+        private final File file;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+
+        private int readPosition;
+
+        public Segment(File directory, int sequence, int size) throws IOException {
+            this.file = File.createTempFile(String.format("spill-%08d-", sequence), ".segment", directory);
+            final RandomAccessFile access;
+            try {
+                access = new RandomAccessFile(file, "rw");
+            } catch (IOException e) {
+                discard(file);
+                throw e;
+            }
+            this.channel = access.getChannel();
+            try {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                // closing the file closes its channel too
+                access.close();
+                discard(file);
+                throw e;
+            }
+        }
+
+        public boolean fits(byte[] record) {
+            return buffer.capacity() - writePosition >= record.length + 4;
+        }
+
+        public void write(byte[] record) {
+            buffer.putInt(writePosition, record.length);
+            buffer.position(writePosition + 4);
+            buffer.put(record);
+            writePosition += record.length + 4;
+        }
+
+        public byte[] read() {
+            final int length = buffer.getInt(readPosition);
+            final byte[] record = new byte[length];
+            buffer.position(readPosition + 4);
+            buffer.get(record);
+            readPosition += length + 4;
+            return record;
+        }
+
+        public boolean isExhausted() {
+            return readPosition == writePosition;
+        }
+
+        public void delete() {
+            close();
+            discard(file);
+        }
+
+        private static void discard(File file) {
+            if (!file.delete()) {
+                LOG.warn("Unable to delete {}", file);
+            }
+        }
+
+        private void close() {
+            // an open mapping keeps the file and its disk space until garbage collected
+            unmap(buffer);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close " + file, e);
+            }
+        }
+
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                try {
+                    // Java 9 and later
+                    final Class<?> type = Class.forName("sun.misc.Unsafe");
+                    final Method invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+                    final Field field = type.getDeclaredField("theUnsafe");
+                    field.setAccessible(true);
+                    invokeCleaner.invoke(field.get(null), buffer);
+                } catch (NoSuchMethodException e) {
+                    // Java 8 and earlier
+                    final Method cleaner = buffer.getClass().getMethod("cleaner");
+                    cleaner.setAccessible(true);
+                    final Object instance = cleaner.invoke(buffer);
+                    instance.getClass().getMethod("clean").invoke(instance);
+                }
+            /* CHECKSTYLE:OFF */
+            } catch (Exception e) {
+            /* CHECKSTYLE:ON */
+                LOG.debug("Unable to unmap segment, leaving it to the garbage collector", e);
+            }
+        }
+
+    }
+
+}
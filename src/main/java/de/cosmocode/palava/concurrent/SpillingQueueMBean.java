@@ -0,0 +1,90 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link SpillingQueue}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface SpillingQueueMBean {
+
+    /**
+     * Returns the maximum number of tasks held on the heap.
+     * 
+     * @return the threshold
+     */
+    int getThreshold();
+    
+    /**
+     * Returns the number of tasks currently held on the heap.
+     * 
+     * @return the number of in-memory tasks
+     */
+    int getMemorySize();
+    
+    /**
+     * Returns the number of tasks currently spilled to disk.
+     * 
+     * @return the number of spilled tasks
+     */
+    int getSpilledSize();
+    
+    /**
+     * Returns the number of segment files.
+     * 
+     * @return the number of segments
+     */
+    int getSegments();
+    
+    /**
+     * Returns the total number of spilled tasks.
+     * 
+     * @return the number of spills
+     */
+    long getSpillCount();
+    
+    /**
+     * Returns the total number of restored tasks.
+     * 
+     * @return the number of restores
+     */
+    long getRestoreCount();
+    
+    /**
+     * Returns the total number of non serializable tasks rejected while spilling.
+     * 
+     * @return the number of rejections
+     */
+    long getRejectedCount();
+    
+    /**
+     * Returns the number of tasks spilled during the last second.
+     * 
+     * @return the spills per second
+     */
+    long getSpillRate();
+    
+    /**
+     * Returns the number of tasks restored during the last second.
+     * 
+     * @return the restores per second
+     */
+    long getRestoreRate();
+    
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Defines when and how the thread pool of a configurable executor is started.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public enum StartupMode {
+
+    /**
+     * Creates the pool during initialization, threads are started on demand.
+     */
+    EAGER,
+    
+    /**
+     * Creates the pool on first use. The executor's MBean is registered at that time as well.
+     */
+    LAZY,
+    
+    /**
+     * Creates the pool and starts all core threads during initialization.
+     */
+    PRESTART,
+    
+    /**
+     * Like {@link #PRESTART} but additionally runs all configured warmup tasks
+     * on the pool and waits for them before the executor becomes available.
+     */
+    WARMUP;
+    
+}
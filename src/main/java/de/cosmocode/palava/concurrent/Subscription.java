@@ -0,0 +1,41 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Demand signal between a {@link DemandRegistry} and one of its listeners.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface Subscription {
+
+    /**
+     * Allows the registry to deliver up to n more notifications
+     * to the subscribed listener.
+     * 
+     * @param n the number of additionally requested notifications
+     * @throws IllegalArgumentException if n is not positive
+     */
+    void request(long n);
+    
+    /**
+     * Stops all further deliveries and discards all buffered notifications.
+     */
+    void cancel();
+    
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Decorates tasks of one executor for profiling, interceptors, context propagation
+ * and lifecycle events, in this order. Every feature is optional and skipped if its
+ * component is null. Interceptors always see the submitted task, not the profiled one.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class TaskDecorator {
+
+    private final String name;
+    
+    private final TaskProfiler profiler;
+    
+    private final InterceptorChain interceptors;
+    
+    private final ContextPropagator propagator;
+    
+    private final TaskEventSink events;
+    
+    public TaskDecorator(String name, TaskProfiler profiler, InterceptorChain interceptors, 
+        ContextPropagator propagator, TaskEventSink events) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.profiler = profiler;
+        this.interceptors = interceptors;
+        this.propagator = propagator;
+        this.events = events;
+    }
+    
+    /**
+     * Decorates the given task.
+     * 
+     * @param task the task
+     * @param delay the delay in nanoseconds before the task is due
+     * @return the decorated task
+     */
+    public Runnable decorate(Runnable task, long delay) {
+        final Runnable profiled = profiler == null ? task : profiler.profile(task);
+        // interceptors see the submitted task, even if it's profiled
+        final Runnable intercepted = interceptors == null ? profiled : interceptors.intercept(task, profiled);
+        final Runnable propagating = propagator == null ? intercepted : propagator.propagate(intercepted);
+        return events == null ? propagating : TaskEvents.trace(events, name, propagating, task.getClass(), delay);
+    }
+    
+    /**
+     * Decorates the given task.
+     * 
+     * @param <T> the generic result type
+     * @param task the task
+     * @param delay the delay in nanoseconds before the task is due
+     * @return the decorated task
+     */
+    public <T> Callable<T> decorate(Callable<T> task, long delay) {
+        final Callable<T> profiled = profiler == null ? task : profiler.profile(task);
+        final Callable<T> intercepted = interceptors == null ? profiled : interceptors.intercept(task, profiled);
+        final Callable<T> propagating = propagator == null ? intercepted : propagator.propagate(intercepted);
+        return events == null ? propagating : TaskEvents.trace(events, name, propagating, task.getClass(), delay);
+    }
+    
+    /**
+     * Decorates all given tasks, which are due immediately.
+     * 
+     * @param <T> the generic result type
+     * @param tasks the tasks
+     * @return the decorated tasks or tasks itself if there is nothing to decorate
+     */
+    public <T> Collection<? extends Callable<T>> decorate(Collection<? extends Callable<T>> tasks) {
+        if (propagator == null && profiler == null && interceptors == null && events == null) {
+            return tasks;
+        } else {
+            final List<Callable<T>> decorated = Lists.newArrayListWithCapacity(tasks.size());
+            for (Callable<T> task : tasks) {
+                decorated.add(decorate(task, 0L));
+            }
+            return decorated;
+        }
+    }
+    
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Receives task lifecycle events of executors and the async registry.
+ * The only implementation besides the disabled default emits Java Flight
+ * Recorder events and is compiled on JDK 11 and later only.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @see TaskEvents
+ */
+interface TaskEventSink {
+
+    /**
+     * Called when a task has been submitted.
+     * 
+     * @param executor the executor name
+     * @param taskClass the class of the submitted task
+     */
+    void submitted(String executor, Class<?> taskClass);
+    
+    /**
+     * Called when a task has been rejected.
+     * 
+     * @param executor the executor name
+     * @param taskClass the class of the rejected task
+     */
+    void rejected(String executor, Class<?> taskClass);
+    
+    /**
+     * Called right before a task is run.
+     * 
+     * @param executor the executor name
+     * @param taskClass the class of the task
+     * @param queueWait the time the task waited for a worker in nanoseconds
+     * @return a handle which must be passed to {@link #finished(Object, boolean)}, may be null
+     */
+    Object started(String executor, Class<?> taskClass, long queueWait);
+    
+    /**
+     * Called right after a task has been run.
+     * 
+     * @param handle the handle returned by {@link #started(String, Class, long)}
+     * @param failed whether the task threw an exception
+     */
+    void finished(Object handle, boolean failed);
+    
+    /**
+     * Called right before a listener is notified.
+     * 
+     * @param key the registry key
+     * @param listenerClass the class of the listener
+     * @param queueWait the time the notification waited for a worker in nanoseconds
+     * @return a handle which must be passed to {@link #notified(Object, boolean)}, may be null
+     */
+    Object notifying(String key, Class<?> listenerClass, long queueWait);
+    
+    /**
+     * Called right after a listener has been notified.
+     * 
+     * @param handle the handle returned by {@link #notifying(String, Class, long)}
+     * @param failed whether the listener threw an exception
+     */
+    void notified(Object handle, boolean failed);
+    
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Static utility methods for {@link TaskEventSink}s. Events are disabled unless
+ * {@link ExecutorConfig#FLIGHT_RECORDER} is set, in which case components load the
+ * flight recorder sink reflectively. Disabled components don't decorate any task.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class TaskEvents {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaskEvents.class);
+    
+    private static final String FLIGHT_RECORDER = "de.cosmocode.palava.concurrent.FlightRecorderEventSink";
+    
+    private static TaskEventSink flightRecorder;
+    
+    private TaskEvents() {
+        
+    }
+    
+    /**
+     * Loads the flight recorder sink.
+     * 
+     * @return the flight recorder sink or null if not available on this platform
+     */
+    public static synchronized TaskEventSink flightRecorder() {
+        if (flightRecorder != null) {
+            return flightRecorder;
+        }
+        try {
+            flightRecorder = Class.forName(FLIGHT_RECORDER).asSubclass(TaskEventSink.class).newInstance();
+            LOG.info("Emitting flight recorder events for task lifecycles");
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Flight recorder events are not available, build on JDK 11 or later to enable them");
+        } catch (LinkageError e) {
+            LOG.warn("Flight recorder events are not supported by this JVM", e);
+        } catch (InstantiationException e) {
+            LOG.warn("Unable to create " + FLIGHT_RECORDER, e);
+        } catch (IllegalAccessException e) {
+            LOG.warn("Unable to create " + FLIGHT_RECORDER, e);
+        }
+        return flightRecorder;
+    }
+    
+    /**
+     * Reports a submission and returns a task which reports its execution.
+     * 
+     * @param sink the event sink
+     * @param executor the executor name
+     * @param task the (decorated) task
+     * @param taskClass the class of the original task
+     * @param delay the scheduled delay in nanoseconds
+     * @return the tracing task
+     */
+    public static Runnable trace(TaskEventSink sink, String executor, Runnable task, Class<?> taskClass, long delay) {
+        sink.submitted(executor, taskClass);
+        return new TracedRunnable(sink, executor, task, taskClass, System.nanoTime() + delay);
+    }
+    
+    /**
+     * Reports a submission and returns a task which reports its execution.
+     * 
+     * @param <V> the generic result type
+     * @param sink the event sink
+     * @param executor the executor name
+     * @param task the (decorated) task
+     * @param taskClass the class of the original task
+     * @param delay the scheduled delay in nanoseconds
+     * @return the tracing task
+     */
+    public static <V> Callable<V> trace(final TaskEventSink sink, final String executor, final Callable<V> task, 
+        final Class<?> taskClass, long delay) {
+        sink.submitted(executor, taskClass);
+        final long expected = System.nanoTime() + delay;
+        return new Callable<V>() {
+            
+            @Override
+            public V call() throws Exception {
+                final Object handle = sink.started(executor, taskClass, Math.max(0L, System.nanoTime() - expected));
+                boolean failed = true;
+                try {
+                    final V result = task.call();
+                    failed = false;
+                    return result;
+                } finally {
+                    sink.finished(handle, failed);
+                }
+            }
+            
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+            
+        };
+    }
+    
+    /**
+     * Decorates the given handler to report all rejections.
+     * 
+     * @param sink the event sink
+     * @param executor the executor name
+     * @param handler the handler
+     * @return a reporting handler
+     */
+    public static RejectedExecutionHandler trace(final TaskEventSink sink, final String executor,
+        final RejectedExecutionHandler handler) {
+        return new RejectedExecutionHandler() {
+            
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+                final Class<?> taskClass = r instanceof TracedRunnable ? TracedRunnable.class.cast(r).taskClass : 
+                    r.getClass();
+                sink.rejected(executor, taskClass);
+                handler.rejectedExecution(r, pool);
+            }
+            
+        };
+    }
+    
+    /**
+     * A runnable reporting its execution. Periodic tasks report the queue wait
+     * of their first execution only. It is deliberately not serializable, because
+     * it would lose its sink on the way and run untraced after deserialization.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class TracedRunnable implements Runnable {
+        
+        private final TaskEventSink sink;
+        
+        private final String executor;
+        
+        private final Runnable task;
+        
+        private final Class<?> taskClass;
+        
+        private volatile long expected;
+        
+        public TracedRunnable(TaskEventSink sink, String executor, Runnable task, Class<?> taskClass, long expected) {
+            this.sink = sink;
+            this.executor = executor;
+            this.task = task;
+            this.taskClass = taskClass;
+            this.expected = expected;
+        }
+        
+        @Override
+        public void run() {
+            final long queueWait = expected == -1L ? 0L : Math.max(0L, System.nanoTime() - expected);
+            final Object handle = sink.started(executor, taskClass, queueWait);
+            expected = -1L;
+            boolean failed = true;
+            try {
+                task.run();
+                failed = false;
+            } finally {
+                sink.finished(handle, failed);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+        
+    }
+    
+}
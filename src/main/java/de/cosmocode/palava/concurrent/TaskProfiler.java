@@ -0,0 +1,309 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Attributes wall time, thread cpu time and allocated bytes to task classes or
+ * {@link Tagged tags}. Only one of sampleRate tasks is measured, all others are
+ * passed through undecorated. At most topK * 2 keys are tracked using Space-Saving:
+ * when a new key arrives at a full table, it replaces the key with the least cost
+ * (cpu time, or wall time if cpu time isn't available) and inherits that cost as its
+ * error. A key's cost is therefore overestimated by at most its error, but a stream
+ * of new keys can't keep evicting an expensive key before it accumulated its cost.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class TaskProfiler implements TaskProfilerMBean {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    
+    private static final Comparator<Statistics> BY_COST = new Comparator<Statistics>() {
+        
+        @Override
+        public int compare(Statistics left, Statistics right) {
+            final long l = left.cost();
+            final long r = right.cost();
+            return l < r ? 1 : l > r ? -1 : 0;
+        }
+        
+    };
+    
+    private final int sampleRate;
+    
+    private final int topK;
+    
+    private final AtomicLong counter = new AtomicLong();
+    
+    private final AtomicLong sampled = new AtomicLong();
+    
+    private final Map<String, Statistics> statistics = Maps.newHashMap();
+    
+    public TaskProfiler(int sampleRate, int topK) {
+        Preconditions.checkArgument(sampleRate > 0, "SampleRate must be positive, but was %s", sampleRate);
+        Preconditions.checkArgument(topK > 0, "TopK must be positive, but was %s", topK);
+        this.sampleRate = sampleRate;
+        this.topK = topK;
+    }
+    
+    private boolean sample() {
+        return counter.getAndIncrement() % sampleRate == 0;
+    }
+    
+    private static String keyOf(Object task) {
+        return task instanceof Tagged ? Tagged.class.cast(task).getTag() : task.getClass().getName();
+    }
+    
+    /**
+     * Decorates the given task if it has been chosen to be measured.
+     * 
+     * @param task the task
+     * @return a measuring task or task itself
+     */
+    public Runnable profile(Runnable task) {
+        return sample() ? new ProfiledRunnable(this, keyOf(task), task) : task;
+    }
+    
+    /**
+     * Decorates the given task if it has been chosen to be measured.
+     * 
+     * @param <T> the generic result type
+     * @param task the task
+     * @return a measuring task or task itself
+     */
+    public <T> Callable<T> profile(final Callable<T> task) {
+        if (!sample()) {
+            return task;
+        }
+        final String key = keyOf(task);
+        return new Callable<T>() {
+            
+            @Override
+            public T call() throws Exception {
+                final Measurement measurement = new Measurement();
+                try {
+                    return task.call();
+                } finally {
+                    record(key, measurement);
+                }
+            }
+            
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+            
+        };
+    }
+    
+    private void record(String key, Measurement measurement) {
+        final long wall = System.nanoTime() - measurement.wall;
+        final long cpu = measurement.cpu == -1L ? -1L : cpuTime() - measurement.cpu;
+        final long allocated = measurement.allocated == -1L ? -1L : allocatedBytes() - measurement.allocated;
+        sampled.incrementAndGet();
+        
+        synchronized (statistics) {
+            Statistics current = statistics.get(key);
+            if (current == null) {
+                current = new Statistics(key);
+                if (statistics.size() >= topK * 2) {
+                    // BY_COST orders descending, so its maximum is the cheapest key
+                    final Statistics evicted = Collections.max(statistics.values(), BY_COST);
+                    statistics.remove(evicted.key);
+                    current.error = evicted.cost();
+                }
+                statistics.put(key, current);
+            }
+            current.count++;
+            current.wall += wall;
+            current.cpu += Math.max(0L, cpu);
+            current.allocated += Math.max(0L, allocated);
+        }
+    }
+    
+    private static long cpuTime() {
+        if (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+            return THREADS.getCurrentThreadCpuTime();
+        } else {
+            return -1L;
+        }
+    }
+    
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1L;
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    @Override
+    public long getSampledTaskCount() {
+        return sampled.get();
+    }
+    
+    @Override
+    public String[] getTopTasks() {
+        final List<Statistics> copies = Lists.newArrayList();
+        synchronized (statistics) {
+            for (Statistics current : statistics.values()) {
+                copies.add(current.copy());
+            }
+        }
+        Collections.sort(copies, BY_COST);
+        final int size = Math.min(topK, copies.size());
+        final String[] top = new String[size];
+        for (int i = 0; i < size; i++) {
+            top[i] = copies.get(i).toString();
+        }
+        return top;
+    }
+    
+    @Override
+    public void reset() {
+        synchronized (statistics) {
+            statistics.clear();
+        }
+    }
+    
+    /**
+     * A measured runnable. It is deliberately not serializable, because it would
+     * lose its profiler on the way and run unmeasured after deserialization.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class ProfiledRunnable implements Runnable {
+        
+        private final TaskProfiler profiler;
+        
+        private final String key;
+        
+        private final Runnable task;
+        
+        public ProfiledRunnable(TaskProfiler profiler, String key, Runnable task) {
+            this.profiler = profiler;
+            this.key = key;
+            this.task = task;
+        }
+        
+        @Override
+        public void run() {
+            final Measurement measurement = new Measurement();
+            try {
+                task.run();
+            } finally {
+                profiler.record(key, measurement);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+        
+    }
+    
+    /**
+     * The start values of a single measurement.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Measurement {
+        
+        private final long wall = System.nanoTime();
+        
+        private final long cpu = cpuTime();
+        
+        private final long allocated = allocatedBytes();
+        
+    }
+    
+    /**
+     * Accumulated measurements of one key, guarded by the statistics map.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Statistics {
+        
+        private final String key;
+        
+        private long count;
+        
+        private long wall;
+        
+        private long cpu;
+        
+        private long allocated;
+        
+        /**
+         * The cost inherited from the evicted key, an upper bound of the cost this
+         * key had before it was tracked.
+         */
+        private long error;
+        
+        public Statistics(String key) {
+            this.key = key;
+        }
+        
+        public long cost() {
+            return (cpu == 0L ? wall : cpu) + error;
+        }
+        
+        public Statistics copy() {
+            final Statistics copy = new Statistics(key);
+            copy.count = count;
+            copy.wall = wall;
+            copy.cpu = cpu;
+            copy.allocated = allocated;
+            copy.error = error;
+            return copy;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s: sampled=%s, wall=%sms, cpu=%sms, error=%sms, allocated=%sKB, avgAllocated=%sB",
+                key, count, TimeUnit.NANOSECONDS.toMillis(wall), TimeUnit.NANOSECONDS.toMillis(cpu),
+                TimeUnit.NANOSECONDS.toMillis(error), allocated / 1024, count == 0 ? 0 : allocated / count);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link TaskProfiler}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface TaskProfilerMBean {
+
+    /**
+     * Returns the sample rate, i.e. one of how many tasks is measured.
+     * 
+     * @return the sample rate
+     */
+    int getSampleRate();
+    
+    /**
+     * Returns the total number of measured tasks.
+     * 
+     * @return the number of sampled tasks
+     */
+    long getSampledTaskCount();
+    
+    /**
+     * Returns the tracked task classes or tags, ordered by cpu time (wall time if
+     * cpu time measurement is not available) plus error descending, including sampled
+     * counts, wall time, cpu time, allocated bytes and the error, i.e. the cost a key
+     * inherited from the key it replaced, by which its cost may be overestimated.
+     * 
+     * @return the top tasks
+     */
+    String[] getTopTasks();
+    
+    /**
+     * Discards all statistics.
+     */
+    void reset();
+    
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Tracks the start time of every task running on one executor and detects
+ * tasks running longer than a threshold when {@link #scan()} is called by the
+ * {@link TaskWatchdog}. The only work done on worker threads is writing the
+ * start time before and clearing it after each task. {@link LongTask}s run by
+ * a drainer are tracked individually using {@link #beforeTask(Object)} and
+ * {@link #afterTask()}, so a busy drainer isn't reported as one long task.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class TaskWatch implements ExecutionHook, TaskWatchMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaskWatch.class);
+    
+    private static final int SAMPLES = 5;
+    
+    // start time of a task which is being interrupted right now
+    private static final long INTERRUPTING = Long.MIN_VALUE;
+    
+    private final String name;
+    
+    private final long threshold;
+    
+    private final boolean interrupt;
+    
+    private final Map<Thread, Slot> slots = new MapMaker().makeMap();
+    
+    private final ThreadLocal<Slot> local = new ThreadLocal<Slot>() {
+        
+        @Override
+        protected Slot initialValue() {
+            final Slot slot = new Slot(Thread.currentThread());
+            slots.put(slot.thread, slot);
+            return slot;
+        }
+        
+    };
+    
+    private final AtomicLong stuckTaskCount = new AtomicLong();
+    
+    private volatile String[] stuckTasks = new String[0];
+    
+    public TaskWatch(String name, long threshold, TimeUnit unit, boolean interrupt) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+        Preconditions.checkArgument(threshold > 0, "Threshold must be positive, but was %s", threshold);
+        this.threshold = unit.toNanos(threshold);
+        this.interrupt = interrupt;
+    }
+    
+    @Override
+    public void beforeExecute(Thread thread, Runnable task) {
+        beforeTask(task);
+    }
+    
+    @Override
+    public void afterExecute(Runnable task, Throwable throwable) {
+        afterTask();
+    }
+    
+    /**
+     * Marks the start of the given task in the current thread. May be called
+     * while a task is running to track a new one instead.
+     * 
+     * @param task the task
+     */
+    void beforeTask(Object task) {
+        final Slot slot = local.get();
+        finish(slot);
+        slot.task = task;
+        slot.started.set(System.nanoTime());
+    }
+    
+    /**
+     * Marks the end of the current task in the current thread.
+     */
+    void afterTask() {
+        finish(local.get());
+    }
+    
+    private void finish(Slot slot) {
+        while (true) {
+            final long started = slot.started.get();
+            if (started == INTERRUPTING) {
+                // the scanner is about to interrupt the task which is ending right now
+                Thread.yield();
+            } else if (slot.started.compareAndSet(started, 0L)) {
+                break;
+            }
+        }
+        if (slot.interrupted) {
+            slot.interrupted = false;
+            // the interrupt was meant for the finished task, not for the next one
+            Thread.interrupted();
+        }
+    }
+    
+    /**
+     * Checks all running tasks. Must only be called by one thread at a time.
+     */
+    void scan() {
+        final long now = System.nanoTime();
+        final List<String> stuck = Lists.newArrayList();
+        for (Slot slot : slots.values()) {
+            if (!slot.thread.isAlive()) {
+                slots.remove(slot.thread);
+                continue;
+            }
+            final long started = slot.started.get();
+            if (started == 0L || started == INTERRUPTING || now - started < threshold) {
+                continue;
+            }
+            final Object task = slot.task;
+            final StackTraceElement[] stack = slot.thread.getStackTrace();
+            if (slot.started.get() != started) {
+                // finished while we were sampling
+                continue;
+            }
+            if (slot.reported != started) {
+                slot.reported = started;
+                slot.samples.clear();
+                stuckTaskCount.incrementAndGet();
+                LOG.warn("{} is stuck in {} on {} for {}ms:{}", new Object[] {
+                    task, slot.thread, name, TimeUnit.NANOSECONDS.toMillis(now - started), format(stack)
+                });
+                if (interrupt) {
+                    interrupt(slot, started);
+                }
+            }
+            if (slot.samples.size() < SAMPLES) {
+                slot.samples.add(stack);
+            }
+            stuck.add(report(slot, task, now - started));
+        }
+        stuckTasks = stuck.toArray(new String[stuck.size()]);
+    }
+    
+    private void interrupt(Slot slot, long started) {
+        // the worker can't finish the task while we hold the slot, so the interrupt hits this very task
+        if (slot.started.compareAndSet(started, INTERRUPTING)) {
+            try {
+                LOG.info("Interrupting {} on {}", slot.thread, name);
+                slot.interrupted = true;
+                slot.thread.interrupt();
+            } finally {
+                slot.started.set(started);
+            }
+        }
+    }
+    
+    private String report(Slot slot, Object task, long running) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(task).append(" in ").append(slot.thread.getName()).append(" for ");
+        builder.append(TimeUnit.NANOSECONDS.toMillis(running)).append("ms");
+        for (int i = 0; i < slot.samples.size(); i++) {
+            builder.append("\nSample ").append(i + 1).append(':').append(format(slot.samples.get(i)));
+        }
+        return builder.toString();
+    }
+    
+    private static String format(StackTraceElement[] stack) {
+        final StringBuilder builder = new StringBuilder();
+        for (StackTraceElement element : stack) {
+            builder.append("\n\tat ").append(element);
+        }
+        return builder.toString();
+    }
+    
+    @Override
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+    
+    @Override
+    public boolean isInterrupting() {
+        return interrupt;
+    }
+    
+    @Override
+    public long getStuckTaskCount() {
+        return stuckTaskCount.get();
+    }
+    
+    @Override
+    public String[] getStuckTasks() {
+        final String[] current = stuckTasks;
+        return Arrays.copyOf(current, current.length);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("TaskWatch [%s]", name);
+    }
+    
+    /**
+     * The state of one worker thread. Task is written by the worker, started by
+     * both, interrupted is set by the scanning thread and cleared by the worker,
+     * everything else is used by the scanning thread only.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Slot {
+        
+        private final Thread thread;
+        
+        private final List<StackTraceElement[]> samples = Lists.newArrayListWithCapacity(SAMPLES);
+        
+        private final AtomicLong started = new AtomicLong();
+        
+        private Object task;
+        
+        private volatile boolean interrupted;
+        
+        private long reported;
+        
+        public Slot(Thread thread) {
+            this.thread = thread;
+        }
+        
+    }
+    
+}
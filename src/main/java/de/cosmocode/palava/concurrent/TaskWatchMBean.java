@@ -0,0 +1,55 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link TaskWatch}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface TaskWatchMBean {
+
+    /**
+     * Returns the time after which a running task is considered stuck.
+     * 
+     * @return the threshold in milliseconds
+     */
+    long getThreshold();
+    
+    /**
+     * Returns whether stuck tasks get interrupted.
+     * 
+     * @return true if stuck tasks are interrupted, false otherwise
+     */
+    boolean isInterrupting();
+    
+    /**
+     * Returns the total number of tasks which have been detected as stuck.
+     * 
+     * @return the number of stuck tasks so far
+     */
+    long getStuckTaskCount();
+    
+    /**
+     * Returns a report per currently stuck task, including the sampled stack traces.
+     * 
+     * @return the currently stuck tasks
+     */
+    String[] getStuckTasks();
+    
+}
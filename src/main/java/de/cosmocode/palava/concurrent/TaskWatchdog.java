@@ -0,0 +1,112 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * Scans all registered {@link TaskWatch}es periodically using a single daemon
+ * thread, which is started with the first and stopped with the last registration.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+@Singleton
+final class TaskWatchdog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaskWatchdog.class);
+    
+    private final Set<TaskWatch> watches = new CopyOnWriteArraySet<TaskWatch>();
+    
+    private long interval = 1000L;
+    
+    private ScheduledExecutorService scanner;
+    
+    @Inject(optional = true)
+    void setInterval(@Named(ExecutorConfig.WATCHDOG_INTERVAL) long interval) {
+        Preconditions.checkArgument(interval > 0, "Interval must be positive, but was %s", interval);
+        this.interval = interval;
+    }
+    
+    /**
+     * Starts scanning the given watch.
+     * 
+     * @param watch the watch
+     */
+    public synchronized void register(TaskWatch watch) {
+        watches.add(Preconditions.checkNotNull(watch, "Watch"));
+        if (scanner != null) {
+            return;
+        }
+        
+        LOG.info("Starting task watchdog scanning every {}ms", interval);
+        scanner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "task-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+            
+        });
+        scanner.scheduleWithFixedDelay(new Runnable() {
+            
+            @Override
+            public void run() {
+                for (TaskWatch watch : watches) {
+                    try {
+                        watch.scan();
+                    /* CHECKSTYLE:OFF */
+                    } catch (RuntimeException e) {
+                    /* CHECKSTYLE:ON */
+                        LOG.error("Scanning " + watch + " failed", e);
+                    }
+                }
+            }
+            
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops scanning the given watch.
+     * 
+     * @param watch the watch
+     */
+    public synchronized void unregister(TaskWatch watch) {
+        watches.remove(watch);
+        if (watches.isEmpty() && scanner != null) {
+            LOG.info("Stopping task watchdog");
+            scanner.shutdownNow();
+            scanner = null;
+        }
+    }
+    
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Tasks implementing this interface carry the tenant they belong to.
+ * Executors using {@link QueueMode#TENANT} queue them accordingly.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ * @see Tenants
+ */
+public interface TenantAware {
+
+    /**
+     * Returns the tenant of this task.
+     * 
+     * @return the tenant, may be null for the default tenant
+     */
+    String getTenant();
+    
+}
@@ -0,0 +1,424 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A {@link BlockingQueue} with one sub queue per tenant. Tasks are dequeued
+ * using deficit round robin: every tenant with pending tasks gets as many tasks
+ * dequeued per round as its weight, so a single tenant can't starve the others
+ * regardless of how many tasks it enqueues. The tenant of a task is determined
+ * using {@link Tenants#of(Object)} when it is enqueued. Tenants without a configured
+ * weight are forgotten, including their statistics, as soon as they have no pending
+ * tasks, so the number of known tenants is bounded by the queue capacity.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class TenantQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>, TenantQueueMBean {
+
+    private final int capacity;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private final Condition notEmpty = lock.newCondition();
+    
+    private final Condition notFull = lock.newCondition();
+    
+    private final Map<String, SubQueue> tenants = Maps.newHashMap();
+    
+    /**
+     * Ring of all tenants with pending tasks.
+     */
+    private final Deque<SubQueue> active = Lists.newLinkedList();
+    
+    private int count;
+    
+    public TenantQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, but was %s", capacity);
+        this.capacity = capacity;
+    }
+    
+    private SubQueue subQueueOf(String tenant) {
+        final SubQueue existing = tenants.get(tenant);
+        if (existing == null) {
+            final SubQueue created = new SubQueue(tenant);
+            tenants.put(tenant, created);
+            return created;
+        } else {
+            return existing;
+        }
+    }
+    
+    private void enqueue(String tenant, Runnable task) {
+        final SubQueue queue = subQueueOf(tenant);
+        if (queue.tasks.isEmpty()) {
+            active.addLast(queue);
+        }
+        queue.tasks.addLast(new Entry(task, System.nanoTime()));
+        queue.enqueued++;
+        count++;
+        notEmpty.signal();
+    }
+    
+    private Runnable dequeue() {
+        final SubQueue queue = active.peekFirst();
+        if (queue.deficit == 0) {
+            queue.deficit = queue.weight;
+        }
+        final Entry entry = queue.tasks.pollFirst();
+        queue.deficit--;
+        if (queue.tasks.isEmpty()) {
+            active.pollFirst();
+            idle(queue);
+        } else if (queue.deficit == 0) {
+            active.addLast(active.pollFirst());
+        }
+        final long wait = System.nanoTime() - entry.enqueued;
+        queue.dequeued++;
+        queue.totalWait += wait;
+        queue.maxWait = Math.max(queue.maxWait, wait);
+        count--;
+        notFull.signal();
+        return entry.task;
+    }
+    
+    private void idle(SubQueue queue) {
+        queue.deficit = 0;
+        if (!queue.configured) {
+            tenants.remove(queue.tenant);
+        }
+    }
+    
+    @Override
+    public boolean offer(Runnable task) {
+        Preconditions.checkNotNull(task, "Task");
+        final String tenant = Tenants.of(task);
+        lock.lock();
+        try {
+            if (count >= capacity) {
+                return false;
+            }
+            enqueue(tenant, task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        Preconditions.checkNotNull(task, "Task");
+        final String tenant = Tenants.of(task);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(tenant, task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        Preconditions.checkNotNull(task, "Task");
+        final String tenant = Tenants.of(task);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                notFull.await();
+            }
+            enqueue(tenant, task);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return count == 0 ? null : active.peekFirst().tasks.peekFirst().task;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (SubQueue queue : active) {
+                final Iterator<Entry> iterator = queue.tasks.iterator();
+                while (iterator.hasNext()) {
+                    if (o.equals(iterator.next().task)) {
+                        iterator.remove();
+                        count--;
+                        if (queue.tasks.isEmpty()) {
+                            active.remove(queue);
+                            idle(queue);
+                        }
+                        notFull.signal();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        Preconditions.checkNotNull(c, "Collection");
+        Preconditions.checkArgument(c != this, "Can't drain to itself");
+        lock.lock();
+        try {
+            int drained = 0;
+            while (count > 0 && drained < maxElements) {
+                c.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = Lists.newArrayList();
+        lock.lock();
+        try {
+            for (SubQueue queue : active) {
+                for (Entry entry : queue.tasks) {
+                    snapshot.add(entry.task);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        final Iterator<Runnable> iterator = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            
+            private Runnable current;
+            
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+            
+            @Override
+            public Runnable next() {
+                current = iterator.next();
+                return current;
+            }
+            
+            @Override
+            public void remove() {
+                Preconditions.checkState(current != null, "next() has not been called");
+                TenantQueue.this.remove(current);
+                current = null;
+            }
+            
+        };
+    }
+    
+    @Override
+    public int getSize() {
+        return size();
+    }
+    
+    @Override
+    public String[] getTenants() {
+        lock.lock();
+        try {
+            final String[] lines = new String[tenants.size()];
+            int i = 0;
+            for (SubQueue queue : tenants.values()) {
+                lines[i++] = queue.toString();
+            }
+            return lines;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public void setWeight(String tenant, int weight) {
+        Preconditions.checkNotNull(tenant, "Tenant");
+        Preconditions.checkArgument(weight > 0, "Weight must be positive, but was %s", weight);
+        lock.lock();
+        try {
+            final SubQueue queue = subQueueOf(tenant);
+            queue.weight = weight;
+            queue.configured = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * A queued task.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Entry {
+        
+        private final Runnable task;
+        
+        private final long enqueued;
+        
+        public Entry(Runnable task, long enqueued) {
+            this.task = task;
+            this.enqueued = enqueued;
+        }
+        
+    }
+    
+    /**
+     * The queue and statistics of a single tenant. Guarded by the lock.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class SubQueue {
+        
+        private final String tenant;
+        
+        private final Deque<Entry> tasks = Lists.newLinkedList();
+        
+        private int weight = 1;
+        
+        private boolean configured;
+        
+        private int deficit;
+        
+        private long enqueued;
+        
+        private long dequeued;
+        
+        private long totalWait;
+        
+        private long maxWait;
+        
+        public SubQueue(String tenant) {
+            this.tenant = tenant;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s: depth=%d, weight=%d, enqueued=%d, meanWait=%dms, maxWait=%dms", 
+                tenant, tasks.size(), weight, enqueued,
+                dequeued == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWait / dequeued),
+                TimeUnit.NANOSECONDS.toMillis(maxWait));
+        }
+        
+    }
+    
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link TenantQueue}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface TenantQueueMBean {
+
+    /**
+     * Returns the total number of queued tasks.
+     * 
+     * @return the number of queued tasks
+     */
+    int getSize();
+    
+    /**
+     * Returns queue depth, weight and wait times of all known tenants, which are
+     * all tenants with pending tasks or a configured weight.
+     * 
+     * @return a human readable description of all tenants
+     */
+    String[] getTenants();
+    
+    /**
+     * Sets the weight of the given tenant. A tenant with weight n gets
+     * n tasks dequeued per round where a tenant with weight 1 gets one.
+     * 
+     * @param tenant the tenant
+     * @param weight the new weight
+     * @throws IllegalArgumentException if weight is not positive
+     */
+    void setWeight(String tenant, int weight);
+    
+}
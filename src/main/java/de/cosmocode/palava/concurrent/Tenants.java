@@ -0,0 +1,195 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility methods to associate tasks with tenants. Tasks are queued
+ * under the tenant they carry when implementing {@link TenantAware} or under
+ * the tenant of the submitting thread otherwise.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class Tenants {
+
+    /**
+     * The tenant used for tasks without any tenant information.
+     */
+    public static final String DEFAULT = "default";
+    
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<String>();
+    
+    private Tenants() {
+        
+    }
+    
+    /**
+     * Returns the tenant of the current thread.
+     * 
+     * @return the current tenant or {@link #DEFAULT} if there is none
+     */
+    public static String current() {
+        final String tenant = CURRENT.get();
+        return tenant == null ? DEFAULT : tenant;
+    }
+    
+    /**
+     * Sets the tenant of the current thread.
+     * 
+     * @param tenant the new tenant
+     * @return the previous tenant, which should be passed to {@link #exit(String)}
+     * @throws NullPointerException if tenant is null
+     */
+    public static String enter(String tenant) {
+        Preconditions.checkNotNull(tenant, "Tenant");
+        final String previous = CURRENT.get();
+        CURRENT.set(tenant);
+        return previous;
+    }
+    
+    /**
+     * Restores the previous tenant of the current thread.
+     * 
+     * @param previous the value returned by {@link #enter(String)}
+     */
+    public static void exit(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+    
+    /**
+     * Returns the tenant of the given task.
+     * 
+     * @param task the task
+     * @return the tenant of task if it is {@link TenantAware}, the tenant
+     *         of the current thread otherwise
+     */
+    public static String of(Object task) {
+        if (task instanceof TenantAware) {
+            final String tenant = TenantAware.class.cast(task).getTenant();
+            return tenant == null ? DEFAULT : tenant;
+        } else {
+            return current();
+        }
+    }
+    
+    /**
+     * Tags the given task with the given tenant.
+     * 
+     * @param tenant the tenant
+     * @param task the task
+     * @return a {@link TenantAware} runnable which runs task
+     * @throws NullPointerException if tenant or task is null
+     */
+    public static Runnable tag(final String tenant, final Runnable task) {
+        Preconditions.checkNotNull(tenant, "Tenant");
+        Preconditions.checkNotNull(task, "Task");
+        return new TaggedRunnable(tenant, task);
+    }
+    
+    /**
+     * Tags the given task with the given tenant.
+     * 
+     * @param <V> the generic result type
+     * @param tenant the tenant
+     * @param task the task
+     * @return a {@link TenantAware} callable which calls task
+     * @throws NullPointerException if tenant or task is null
+     */
+    public static <V> Callable<V> tag(final String tenant, final Callable<V> task) {
+        Preconditions.checkNotNull(tenant, "Tenant");
+        Preconditions.checkNotNull(task, "Task");
+        return new TaggedCallable<V>(tenant, task);
+    }
+    
+    /**
+     * A {@link Runnable} tagged with a tenant.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class TaggedRunnable implements Runnable, TenantAware {
+        
+        private final String tenant;
+        
+        private final Runnable task;
+        
+        public TaggedRunnable(String tenant, Runnable task) {
+            this.tenant = tenant;
+            this.task = task;
+        }
+        
+        @Override
+        public String getTenant() {
+            return tenant;
+        }
+        
+        @Override
+        public void run() {
+            task.run();
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s [%s]", task, tenant);
+        }
+        
+    }
+    
+    /**
+     * A {@link Callable} tagged with a tenant.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     * @param <V> the generic result type
+     */
+    private static final class TaggedCallable<V> implements Callable<V>, TenantAware {
+        
+        private final String tenant;
+        
+        private final Callable<V> task;
+        
+        public TaggedCallable(String tenant, Callable<V> task) {
+            this.tenant = tenant;
+            this.task = task;
+        }
+        
+        @Override
+        public String getTenant() {
+            return tenant;
+        }
+        
+        @Override
+        public V call() throws Exception {
+            return task.call();
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s [%s]", task, tenant);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Config keys used by {@link DefaultThreadProvider}. All keys are optional.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class ThreadProviderConfig {
+
+    /**
+     * The interval in which cpu time and allocated bytes of all
+     * known threads are sampled. Defaults to 30.
+     */
+    public static final String SAMPLING_INTERVAL = "threads.samplingInterval";
+    
+    /**
+     * The unit of {@link #SAMPLING_INTERVAL}. Defaults to seconds.
+     */
+    public static final String SAMPLING_INTERVAL_UNIT = "threads.samplingIntervalUnit";
+    
+    private ThreadProviderConfig() {
+        
+    }
+    
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility methods shared by the configurable executors to use an
+ * optional {@link ThreadProvider}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class ThreadProviders {
+
+    private ThreadProviders() {
+        
+    }
+    
+    /**
+     * Creates the thread factory of an executor. Threads are tracked if a {@link ThreadProvider}
+     * is available and accounted to the given group if it's a {@link GroupingThreadProvider}.
+     * 
+     * @param provider the thread provider, may be null
+     * @param factory the configured thread factory, may be the provider itself
+     * @param group the group threads are accounted to, usually the executor name
+     * @return the thread factory used for the underlying pool
+     * @throws NullPointerException if factory or group is null
+     */
+    static ThreadFactory threadFactory(ThreadProvider provider, ThreadFactory factory, String group) {
+        Preconditions.checkNotNull(factory, "Factory");
+        Preconditions.checkNotNull(group, "Group");
+        if (provider == null) {
+            return factory;
+        } else if (provider instanceof GroupingThreadProvider) {
+            final GroupingThreadProvider grouping = GroupingThreadProvider.class.cast(provider);
+            return factory == provider ? grouping.newThreadFactory(group) : grouping.newThreadFactory(group, factory);
+        } else {
+            return factory == provider ? provider.newThreadFactory() : provider.newThreadFactory(factory);
+        }
+    }
+    
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor which cancels tasks exceeding their timeout. Executors configured
+ * using {@link ExecutorModule} are bound to this interface as well, using the
+ * same binding annotation. Timeouts are measured from submission, like those of
+ * {@link java.util.concurrent.ExecutorService#invokeAll(java.util.Collection, long, TimeUnit)},
+ * and expire up to {@link ExecutorConfig#TIMEOUT_TICK} late.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface TimeoutExecutor extends Executor {
+
+    /**
+     * Submits the given task, which will be cancelled, interrupting it if running,
+     * when it didn't complete within the given timeout.
+     * 
+     * @param <T> the generic result type
+     * @param task the task
+     * @param timeout the maximum time to complete
+     * @param unit the unit of timeout
+     * @return a future representing the pending completion of task
+     * @throws NullPointerException if task or unit is null
+     * @throws IllegalArgumentException if timeout is not positive
+     * @throws RejectedExecutionException if the task can't be accepted
+     */
+    <T> Future<T> submit(Callable<T> task, long timeout, TimeUnit unit);
+    
+    /**
+     * Submits the given task, which will be cancelled, interrupting it if running,
+     * when it didn't complete within the given timeout.
+     * 
+     * @param task the task
+     * @param timeout the maximum time to complete
+     * @param unit the unit of timeout
+     * @return a future representing the pending completion of task
+     * @throws NullPointerException if task or unit is null
+     * @throws IllegalArgumentException if timeout is not positive
+     * @throws RejectedExecutionException if the task can't be accepted
+     */
+    Future<?> submit(Runnable task, long timeout, TimeUnit unit);
+    
+}
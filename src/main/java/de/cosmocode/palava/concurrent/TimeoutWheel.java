@@ -0,0 +1,355 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * A hashed timing wheel shared by all executors which expires task timeouts.
+ * 
+ * <p>
+ *   Scheduling and cancelling a timeout only enqueues it. A single daemon thread
+ *   ticks every {@link ExecutorConfig#TIMEOUT_TICK} milliseconds, moves new timeouts
+ *   into their bucket, unlinks cancelled ones in constant time and expires the due
+ *   timeouts of the current bucket. Timeouts therefore expire up to one tick late.
+ *   The thread is started with the first scheduled timeout and stops itself once
+ *   all executors are unregistered and no timeouts are left, so timeouts of
+ *   executors being shut down still expire. Stopping and restarting happen under
+ *   the lock of this wheel, so a timeout scheduled concurrently is never stranded.
+ * </p>
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+@Singleton
+final class TimeoutWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeoutWheel.class);
+    
+    private static final int WHEEL_SIZE = 512;
+    
+    private static final int MASK = WHEEL_SIZE - 1;
+    
+    private static final int INIT = 0;
+    
+    private static final int CANCELLED = 1;
+    
+    private static final int EXPIRED = 2;
+    
+    private final Set<Object> owners = new CopyOnWriteArraySet<Object>();
+    
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+    
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+    
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+    
+    private long tick = 10L;
+    
+    private volatile Thread worker;
+    
+    public TimeoutWheel() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
+    }
+    
+    @Inject(optional = true)
+    void setTick(@Named(ExecutorConfig.TIMEOUT_TICK) long tick) {
+        Preconditions.checkArgument(tick > 0, "Tick must be positive, but was %s", tick);
+        this.tick = tick;
+    }
+    
+    /**
+     * Registers the given owner, which keeps the timer thread alive.
+     * 
+     * @param owner the owner
+     */
+    public void register(Object owner) {
+        owners.add(Preconditions.checkNotNull(owner, "Owner"));
+    }
+    
+    /**
+     * Unregisters the given owner. The timer thread stops once the last owner is
+     * unregistered and all remaining timeouts expired or were cancelled.
+     * 
+     * @param owner the owner
+     */
+    public void unregister(Object owner) {
+        owners.remove(owner);
+    }
+    
+    /**
+     * Schedules the given action to run after the given delay on the timer thread.
+     * The action must be cheap.
+     * 
+     * @param action the action
+     * @param delay the delay
+     * @param unit the unit of delay
+     * @return a timeout which can be cancelled
+     */
+    public Timeout schedule(Runnable action, long delay, TimeUnit unit) {
+        Preconditions.checkNotNull(action, "Action");
+        Preconditions.checkNotNull(unit, "Unit");
+        final Timeout timeout = new Timeout(action, System.nanoTime() + unit.toNanos(delay));
+        pending.add(timeout);
+        // checked after adding, pairs with the idle check of the worker
+        if (worker == null) {
+            start();
+        }
+        return timeout;
+    }
+    
+    private synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        LOG.info("Starting timeout wheel ticking every {}ms", tick);
+        final Thread thread = new Thread(new Worker(), "timeout-wheel");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+    
+    /**
+     * Stops the given worker if no owner is registered and no timeout is left.
+     * The worker is cleared before checking for pending timeouts, so a concurrent
+     * {@link #schedule(Runnable, long, TimeUnit)} either sees no worker and starts
+     * a new one or its timeout is seen here.
+     * 
+     * @param current the calling worker thread
+     * @param size the number of timeouts in the wheel
+     * @return true if the worker has to stop
+     */
+    private synchronized boolean idle(Thread current, int size) {
+        if (size > 0 || !owners.isEmpty() || !pending.isEmpty()) {
+            return false;
+        }
+        worker = null;
+        if (pending.isEmpty()) {
+            LOG.info("Stopping timeout wheel");
+            return true;
+        } else {
+            worker = current;
+            return false;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("TimeoutWheel [%sms]", tick);
+    }
+    
+    /**
+     * A scheduled timeout.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    final class Timeout {
+        
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        
+        private final Runnable action;
+        
+        private final long deadline;
+        
+        private long rounds;
+        
+        private Bucket bucket;
+        
+        private Timeout previous;
+        
+        private Timeout next;
+        
+        private Timeout(Runnable action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+        
+        /**
+         * Cancels this timeout. The entry is unlinked from its bucket on the next tick.
+         * 
+         * @return true if this timeout was cancelled, false if it already expired or was cancelled
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(INIT, CANCELLED)) {
+                cancelled.add(this);
+                return true;
+            } else {
+                return false;
+            }
+        }
+        
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+            try {
+                action.run();
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                LOG.error("Timeout action " + action + " failed", e);
+            }
+        }
+        
+    }
+    
+    /**
+     * A doubly linked list of timeouts, only accessed by the timer thread.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Bucket {
+        
+        private Timeout head;
+        
+        private Timeout tail;
+        
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = timeout;
+                tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+        
+        Timeout remove(Timeout timeout) {
+            final Timeout next = timeout.next;
+            if (timeout.previous != null) {
+                timeout.previous.next = next;
+            }
+            if (next != null) {
+                next.previous = timeout.previous;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+        
+    }
+    
+    /**
+     * The timer thread.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private final class Worker implements Runnable {
+        
+        private final long tickNanos = TimeUnit.MILLISECONDS.toNanos(tick);
+        
+        private final long start = System.nanoTime();
+        
+        private long ticks;
+        
+        private int size;
+        
+        @Override
+        public void run() {
+            final Thread current = Thread.currentThread();
+            while (true) {
+                final long now = System.nanoTime();
+                final long sleep = start + (ticks + 1) * tickNanos - now;
+                if (sleep > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(sleep);
+                    } catch (InterruptedException e) {
+                        LOG.warn("Timeout wheel has been interrupted, ignoring");
+                    }
+                    continue;
+                }
+                unlinkCancelled();
+                transferPending();
+                expire(wheel[(int) (ticks & MASK)]);
+                ticks++;
+                if (owners.isEmpty() && idle(current, size)) {
+                    return;
+                }
+            }
+        }
+        
+        private void unlinkCancelled() {
+            Timeout timeout;
+            while ((timeout = cancelled.poll()) != null) {
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                    size--;
+                }
+            }
+        }
+        
+        private void transferPending() {
+            // bounded to keep ticks on time if submitters are faster than this thread
+            for (int i = 0; i < 100000; i++) {
+                final Timeout timeout = pending.poll();
+                if (timeout == null) {
+                    return;
+                } else if (timeout.state.get() != INIT) {
+                    continue;
+                }
+                final long due = Math.max(ticks, (timeout.deadline - start) / tickNanos);
+                timeout.rounds = (due - ticks) / WHEEL_SIZE;
+                wheel[(int) (due & MASK)].add(timeout);
+                size++;
+            }
+        }
+        
+        private void expire(Bucket bucket) {
+            Timeout timeout = bucket.head;
+            while (timeout != null) {
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    timeout = timeout.next;
+                } else {
+                    final Timeout next = bucket.remove(timeout);
+                    size--;
+                    timeout.expire();
+                    timeout = next;
+                }
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * Defines how idle worker threads of a configurable executor wait for new tasks.
+ * Spinning trades idle cpu time for wake up latency.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public enum WaitStrategy {
+
+    /**
+     * Polls the queue in a tight loop and never parks.
+     */
+    BUSY_SPIN {
+        
+        @Override
+        boolean idle(int round, int spins, int yields) {
+            return true;
+        }
+        
+    },
+    
+    /**
+     * Spins for the configured number of tries and yields afterwards, but never parks.
+     */
+    SPIN_YIELD {
+        
+        @Override
+        boolean idle(int round, int spins, int yields) {
+            if (round >= spins) {
+                Thread.yield();
+            }
+            return true;
+        }
+        
+    },
+    
+    /**
+     * Spins and yields for the configured number of tries and parks afterwards.
+     */
+    SPIN_PARK {
+        
+        @Override
+        boolean idle(int round, int spins, int yields) {
+            if (round < spins) {
+                return true;
+            } else if (round < spins + yields) {
+                Thread.yield();
+                return true;
+            } else {
+                return false;
+            }
+        }
+        
+    },
+    
+    /**
+     * Parks immediately, which is the behaviour of a plain {@link java.util.concurrent.ThreadPoolExecutor}.
+     */
+    PARK {
+        
+        @Override
+        boolean idle(int round, int spins, int yields) {
+            return false;
+        }
+        
+    };
+    
+    /**
+     * Called whenever an idle worker found the queue empty.
+     * 
+     * @param round the number of unsuccessful polls so far, starting at 0
+     * @param spins the configured number of spin tries
+     * @param yields the configured number of yield tries
+     * @return true if the worker should poll again, false if it should park
+     */
+    abstract boolean idle(int round, int spins, int yields);
+    
+}
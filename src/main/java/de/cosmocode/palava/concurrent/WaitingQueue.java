@@ -0,0 +1,258 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link BlockingQueue} decorator which lets idle workers wait according
+ * to a {@link WaitStrategy} before blocking on the backing queue.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class WaitingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>, WaitingQueueMBean {
+
+    private final BlockingQueue<Runnable> queue;
+    
+    private final WaitStrategy strategy;
+    
+    private final int spins;
+    
+    private final int yields;
+    
+    private final AtomicLong spinHits = new AtomicLong();
+    
+    private final AtomicLong spinTime = new AtomicLong();
+    
+    private final AtomicLong wakeups = new AtomicLong();
+    
+    private final AtomicLong wakeupLatency = new AtomicLong();
+    
+    private final AtomicLong maxWakeupLatency = new AtomicLong();
+    
+    private volatile long lastOffer;
+    
+    public WaitingQueue(BlockingQueue<Runnable> queue, WaitStrategy strategy, int spins, int yields) {
+        this.queue = Preconditions.checkNotNull(queue, "Queue");
+        this.strategy = Preconditions.checkNotNull(strategy, "Strategy");
+        Preconditions.checkArgument(spins >= 0, "Spins must not be negative");
+        Preconditions.checkArgument(yields >= 0, "Yields must not be negative");
+        this.spins = spins;
+        this.yields = yields;
+    }
+    
+    @Override
+    public Runnable take() throws InterruptedException {
+        final long start = System.nanoTime();
+        for (int round = 0; true; round = next(round)) {
+            final Runnable task = queue.poll();
+            if (task != null) {
+                spun(start, round);
+                return task;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else if (!strategy.idle(round, spins, yields)) {
+                break;
+            }
+        }
+        final long parked = System.nanoTime();
+        spinTime.addAndGet(parked - start);
+        final Runnable task = queue.take();
+        wokeUp(parked);
+        return task;
+    }
+    
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        final long start = System.nanoTime();
+        final long deadline = start + unit.toNanos(timeout);
+        for (int round = 0; true; round = next(round)) {
+            final Runnable task = queue.poll();
+            if (task != null) {
+                spun(start, round);
+                return task;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else if (System.nanoTime() - deadline >= 0) {
+                spinTime.addAndGet(System.nanoTime() - start);
+                return null;
+            } else if (!strategy.idle(round, spins, yields)) {
+                break;
+            }
+        }
+        final long parked = System.nanoTime();
+        spinTime.addAndGet(parked - start);
+        final Runnable task = queue.poll(deadline - parked, TimeUnit.NANOSECONDS);
+        if (task != null) {
+            wokeUp(parked);
+        }
+        return task;
+    }
+    
+    /**
+     * Advances the given round, saturating at {@link Integer#MAX_VALUE}, because
+     * {@link WaitStrategy#SPIN_YIELD} never parks and would otherwise overflow.
+     * 
+     * @param round the current round
+     * @return the next round
+     */
+    private static int next(int round) {
+        return round == Integer.MAX_VALUE ? round : round + 1;
+    }
+    
+    private void spun(long start, int round) {
+        if (round > 0) {
+            spinHits.incrementAndGet();
+            spinTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+    
+    private void wokeUp(long parked) {
+        final long offered = lastOffer;
+        if (offered - parked < 0) {
+            // the task was there before we parked, this wasn't a real wake up
+            return;
+        }
+        final long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - offered);
+        wakeups.incrementAndGet();
+        wakeupLatency.addAndGet(latency);
+        while (true) {
+            final long max = maxWakeupLatency.get();
+            if (latency <= max || maxWakeupLatency.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable e) {
+        lastOffer = System.nanoTime();
+        return queue.offer(e);
+    }
+    
+    @Override
+    public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+        lastOffer = System.nanoTime();
+        return queue.offer(e, timeout, unit);
+    }
+    
+    @Override
+    public void put(Runnable e) throws InterruptedException {
+        lastOffer = System.nanoTime();
+        queue.put(e);
+    }
+    
+    @Override
+    public Runnable poll() {
+        return queue.poll();
+    }
+    
+    @Override
+    public Runnable peek() {
+        return queue.peek();
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        return queue.remove(o);
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        return queue.contains(o);
+    }
+    
+    @Override
+    public int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return queue.drainTo(c);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        return queue.drainTo(c, maxElements);
+    }
+    
+    @Override
+    public Iterator<Runnable> iterator() {
+        return queue.iterator();
+    }
+    
+    @Override
+    public int size() {
+        return queue.size();
+    }
+    
+    @Override
+    public Object[] toArray() {
+        return queue.toArray();
+    }
+    
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return queue.toArray(a);
+    }
+    
+    @Override
+    public String getWaitStrategy() {
+        return strategy.name();
+    }
+    
+    @Override
+    public long getSpinHits() {
+        return spinHits.get();
+    }
+    
+    @Override
+    public long getParkedWakeups() {
+        return wakeups.get();
+    }
+    
+    @Override
+    public long getIdleSpinTime() {
+        return TimeUnit.NANOSECONDS.toMillis(spinTime.get());
+    }
+    
+    @Override
+    public double getMeanWakeupLatency() {
+        final long count = wakeups.get();
+        return count == 0 ? 0.0 : (double) wakeupLatency.get() / count;
+    }
+    
+    @Override
+    public long getMaxWakeupLatency() {
+        return maxWakeupLatency.get();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("WaitingQueue [%s, %s]", strategy, queue);
+    }
+    
+}
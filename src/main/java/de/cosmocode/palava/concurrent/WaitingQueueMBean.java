@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+/**
+ * MBean interface for {@link WaitingQueue}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public interface WaitingQueueMBean {
+
+    /**
+     * Returns the name of the configured wait strategy.
+     * 
+     * @return the wait strategy
+     */
+    String getWaitStrategy();
+    
+    /**
+     * Returns the number of tasks which have been picked up by spinning
+     * or yielding workers.
+     * 
+     * @return the number of spin hits
+     */
+    long getSpinHits();
+    
+    /**
+     * Returns the number of tasks which have been picked up by parked workers.
+     * 
+     * @return the number of parked wake ups
+     */
+    long getParkedWakeups();
+    
+    /**
+     * Returns the total time idle workers spent spinning and yielding, which is
+     * roughly the cpu time burned while waiting.
+     * 
+     * @return the idle spin time in milliseconds
+     */
+    long getIdleSpinTime();
+    
+    /**
+     * Returns the mean time between the offer of a task and the wake up
+     * of the parked worker picking it up.
+     * 
+     * @return the mean wake up latency in microseconds
+     */
+    double getMeanWakeupLatency();
+    
+    /**
+     * Returns the maximum observed wake up latency.
+     * 
+     * @return the max wake up latency in microseconds
+     */
+    long getMaxWakeupLatency();
+    
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.Provider;
+import com.google.inject.Scope;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Implementation of the {@link WorkerScoped} scope. Worker threads
+ * enter the scope when they start and exit it when they terminate.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class WorkerScope implements Scope {
+
+    static final WorkerScope INSTANCE = new WorkerScope();
+    
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerScope.class);
+    
+    private static final ThreadLocal<Map<Key<?>, Object>> VALUES = new ThreadLocal<Map<Key<?>, Object>>();
+    
+    private WorkerScope() {
+        
+    }
+    
+    /**
+     * Enters the scope for the current thread.
+     * 
+     * @return true if the scope was entered, false if the current thread already was inside the scope
+     */
+    static boolean enter() {
+        if (VALUES.get() == null) {
+            VALUES.set(Maps.<Key<?>, Object>newHashMap());
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Exits the scope for the current thread and disposes all scoped
+     * instances which implement {@link Disposable}.
+     */
+    static void exit() {
+        final Map<Key<?>, Object> values = VALUES.get();
+        VALUES.remove();
+        if (values == null) {
+            return;
+        }
+        for (Map.Entry<Key<?>, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof Disposable) {
+                try {
+                    Disposable.class.cast(entry.getValue()).dispose();
+                } catch (LifecycleException e) {
+                    LOG.warn("Unable to dispose worker scoped " + entry.getKey(), e);
+                /* CHECKSTYLE:OFF */
+                } catch (RuntimeException e) {
+                /* CHECKSTYLE:ON */
+                    LOG.warn("Unable to dispose worker scoped " + entry.getKey(), e);
+                }
+            }
+        }
+        LOG.trace("Released {} worker scoped instance(s) of {}", values.size(), Thread.currentThread());
+    }
+    
+    @Override
+    public <T> Provider<T> scope(final Key<T> key, final Provider<T> unscoped) {
+        return new Provider<T>() {
+            
+            @Override
+            public T get() {
+                final Map<Key<?>, Object> values = VALUES.get();
+                if (values == null) {
+                    throw new OutOfScopeException(String.format(
+                        "Cannot access %s outside of a worker thread", key));
+                }
+                @SuppressWarnings("unchecked")
+                final T existing = (T) values.get(key);
+                if (existing == null) {
+                    final T created = unscoped.get();
+                    values.put(key, created);
+                    return created;
+                } else {
+                    return existing;
+                }
+            }
+            
+            @Override
+            public String toString() {
+                return String.format("%s[%s]", unscoped, WorkerScope.this);
+            }
+            
+        };
+    }
+    
+    @Override
+    public String toString() {
+        return "WorkerScope";
+    }
+    
+}
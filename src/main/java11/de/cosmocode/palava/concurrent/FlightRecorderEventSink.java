@@ -0,0 +1,200 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.concurrent;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A {@link TaskEventSink} which emits Java Flight Recorder events. Loaded
+ * reflectively by {@link TaskEvents#flightRecorder()}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+final class FlightRecorderEventSink implements TaskEventSink {
+
+    @Override
+    public void submitted(String executor, Class<?> taskClass) {
+        final TaskSubmitted event = new TaskSubmitted();
+        if (event.shouldCommit()) {
+            event.executor = executor;
+            event.taskClass = taskClass;
+            event.commit();
+        }
+    }
+    
+    @Override
+    public void rejected(String executor, Class<?> taskClass) {
+        final TaskRejected event = new TaskRejected();
+        if (event.shouldCommit()) {
+            event.executor = executor;
+            event.taskClass = taskClass;
+            event.commit();
+        }
+    }
+    
+    @Override
+    public Object started(String executor, Class<?> taskClass, long queueWait) {
+        final TaskExecution event = new TaskExecution();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.executor = executor;
+        event.taskClass = taskClass;
+        event.queueWait = queueWait;
+        event.begin();
+        return event;
+    }
+    
+    @Override
+    public void finished(Object handle, boolean failed) {
+        if (handle == null) {
+            return;
+        }
+        final TaskExecution event = TaskExecution.class.cast(handle);
+        event.end();
+        if (event.shouldCommit()) {
+            event.failed = failed;
+            event.commit();
+        }
+    }
+    
+    @Override
+    public Object notifying(String key, Class<?> listenerClass, long queueWait) {
+        final ListenerNotification event = new ListenerNotification();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.key = key;
+        event.listenerClass = listenerClass;
+        event.queueWait = queueWait;
+        event.begin();
+        return event;
+    }
+    
+    @Override
+    public void notified(Object handle, boolean failed) {
+        if (handle == null) {
+            return;
+        }
+        final ListenerNotification event = ListenerNotification.class.cast(handle);
+        event.end();
+        if (event.shouldCommit()) {
+            event.failed = failed;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Emitted when a task has been submitted.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    @Name("de.cosmocode.palava.concurrent.TaskSubmitted")
+    @Label("Task Submitted")
+    @Category({"Palava", "Concurrent"})
+    @StackTrace(false)
+    static final class TaskSubmitted extends Event {
+        
+        @Label("Executor")
+        String executor;
+        
+        @Label("Task Class")
+        Class<?> taskClass;
+        
+    }
+    
+    /**
+     * Emitted when a task has been rejected. Carries the stack trace of the submitter.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    @Name("de.cosmocode.palava.concurrent.TaskRejected")
+    @Label("Task Rejected")
+    @Category({"Palava", "Concurrent"})
+    static final class TaskRejected extends Event {
+        
+        @Label("Executor")
+        String executor;
+        
+        @Label("Task Class")
+        Class<?> taskClass;
+        
+    }
+    
+    /**
+     * Spans the execution of a task, from start to finish.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    @Name("de.cosmocode.palava.concurrent.TaskExecution")
+    @Label("Task Execution")
+    @Category({"Palava", "Concurrent"})
+    @StackTrace(false)
+    static final class TaskExecution extends Event {
+        
+        @Label("Executor")
+        String executor;
+        
+        @Label("Task Class")
+        Class<?> taskClass;
+        
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+        
+        @Label("Failed")
+        boolean failed;
+        
+    }
+    
+    /**
+     * Spans the asynchronous notification of a single listener.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    @Name("de.cosmocode.palava.concurrent.ListenerNotification")
+    @Label("Listener Notification")
+    @Category({"Palava", "Concurrent"})
+    @StackTrace(false)
+    static final class ListenerNotification extends Event {
+        
+        @Label("Key")
+        String key;
+        
+        @Label("Listener Class")
+        Class<?> listenerClass;
+        
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+        
+        @Label("Failed")
+        boolean failed;
+        
+    }
+    
+}
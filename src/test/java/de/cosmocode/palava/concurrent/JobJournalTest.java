@@ -0,0 +1,181 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link JobJournal}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class JobJournalTest {
+    
+    private File file;
+    
+    /**
+     * Creates a path for a journal which doesn't exist yet.
+     * 
+     * @throws IOException if the temporary file can't be created
+     */
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("journal", ".dat");
+        Assert.assertTrue(file.delete());
+    }
+    
+    /**
+     * Removes the journal.
+     */
+    @After
+    public void after() {
+        file.delete();
+        new File(file.getPath() + ".compact").delete();
+    }
+    
+    /**
+     * Tests that replaying a missing file yields no entries.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void empty() throws IOException {
+        final JobJournal unit = new JobJournal(file);
+        Assert.assertTrue(unit.replay().isEmpty());
+        unit.close();
+    }
+    
+    /**
+     * Tests that replaying returns scheduled but not removed jobs.
+     * 
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void replay() throws IOException, ClassNotFoundException {
+        final JobJournal first = new JobJournal(file);
+        first.replay();
+        first.scheduled("a", 1L, new Named("a"));
+        first.scheduled("b", 2L, new Named("b"));
+        first.scheduled("c", 3L, new Named("c"));
+        first.removed("b");
+        first.close();
+        
+        final JobJournal second = new JobJournal(file);
+        final Map<String, JobJournal.Entry> entries = second.replay();
+        second.close();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(1L, entries.get("a").getDue());
+        Assert.assertEquals("c", ((Named) entries.get("c").getJob()).name);
+        Assert.assertNull(entries.get("b"));
+    }
+    
+    /**
+     * Tests that a truncated last record, e.g. after a crash, is ignored.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void truncated() throws IOException {
+        final JobJournal first = new JobJournal(file);
+        first.replay();
+        first.scheduled("a", 1L, new Named("a"));
+        first.scheduled("b", 2L, new Named("b"));
+        first.close();
+        
+        final RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.setLength(raw.length() - 3L);
+        } finally {
+            raw.close();
+        }
+        
+        final JobJournal second = new JobJournal(file);
+        final Map<String, JobJournal.Entry> entries = second.replay();
+        Assert.assertEquals(1, entries.size());
+        Assert.assertNotNull(entries.get("a"));
+        second.scheduled("c", 3L, new Named("c"));
+        second.close();
+        
+        // replay compacted the file, so the truncated record doesn't hide later ones
+        final JobJournal third = new JobJournal(file);
+        Assert.assertEquals(2, third.replay().size());
+        third.close();
+    }
+    
+    /**
+     * Tests that compaction keeps pending jobs and is a no-op once closed.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void compact() throws IOException {
+        final JobJournal unit = new JobJournal(file);
+        unit.replay();
+        for (int i = 0; i < 10; i++) {
+            unit.scheduled("job" + i, i, new Named("job" + i));
+            if (i % 2 == 0) {
+                unit.removed("job" + i);
+            }
+        }
+        final long before = file.length();
+        unit.compact();
+        Assert.assertTrue(file.length() < before);
+        Assert.assertEquals(5, unit.size());
+        unit.close();
+        unit.compact();
+        Assert.assertFalse(new File(file.getPath() + ".compact").exists());
+        
+        final JobJournal replayed = new JobJournal(file);
+        Assert.assertEquals(5, replayed.replay().size());
+        replayed.close();
+    }
+    
+    /**
+     * A job which only carries a name.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Named implements Job {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final String name;
+        
+        public Named(String name) {
+            this.name = name;
+        }
+        
+        @Override
+        public void run() {
+            // nothing to do
+        }
+        
+    }
+    
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link LongTaskRing}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class LongTaskRingTest {
+    
+    /**
+     * Tests that the capacity is rounded up to a power of two.
+     */
+    @Test
+    public void capacity() {
+        Assert.assertEquals(8, new LongTaskRing(5).capacity());
+        Assert.assertEquals(8, new LongTaskRing(8).capacity());
+        Assert.assertEquals(1, new LongTaskRing(1).capacity());
+    }
+    
+    /**
+     * Tests that capacities which can't be rounded up to a power of two are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityTooLarge() {
+        new LongTaskRing(LongTaskRing.MAXIMUM_CAPACITY + 1);
+    }
+    
+    /**
+     * Tests that offering to a full ring fails and running frees a slot.
+     */
+    @Test
+    public void full() {
+        final Recorder recorder = new Recorder();
+        final LongTaskRing unit = new LongTaskRing(4);
+        for (long i = 0; i < 4; i++) {
+            Assert.assertTrue(unit.offer(recorder, i));
+        }
+        Assert.assertFalse(unit.offer(recorder, 4L));
+        Assert.assertEquals(4, unit.size());
+        Assert.assertTrue(unit.runNext());
+        Assert.assertTrue(unit.offer(recorder, 4L));
+    }
+    
+    /**
+     * Tests that arguments keep their order when positions wrap around the ring many times.
+     */
+    @Test
+    public void wrapAround() {
+        final Recorder recorder = new Recorder();
+        final LongTaskRing unit = new LongTaskRing(4);
+        long offered = 0L;
+        for (int round = 0; round < 100; round++) {
+            // odd batch sizes move the head across the end of the ring
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(unit.offer(recorder, offered++));
+            }
+            while (unit.runNext()) {
+                continue;
+            }
+            Assert.assertTrue(unit.isEmpty());
+        }
+        Assert.assertEquals(offered, recorder.arguments.size());
+        for (int i = 0; i < offered; i++) {
+            Assert.assertEquals(Long.valueOf(i), recorder.arguments.get(i));
+        }
+    }
+    
+    /**
+     * Tests that polled tasks run with their argument.
+     */
+    @Test
+    public void poll() {
+        final Recorder recorder = new Recorder();
+        final LongTaskRing unit = new LongTaskRing(2);
+        unit.offer(recorder, 42L);
+        final Runnable task = unit.poll();
+        Assert.assertNotNull(task);
+        Assert.assertNull(unit.poll());
+        Assert.assertFalse(unit.runNext());
+        task.run();
+        Assert.assertEquals(Long.valueOf(42L), recorder.arguments.get(0));
+    }
+    
+    /**
+     * Tests that a failing task doesn't break the ring.
+     */
+    @Test
+    public void failure() {
+        final LongTaskRing unit = new LongTaskRing(2);
+        unit.offer(new LongTask() {
+            
+            @Override
+            public void run(long argument) {
+                throw new IllegalStateException();
+            }
+            
+        }, 0L);
+        Assert.assertTrue(unit.runNext());
+        Assert.assertTrue(unit.isEmpty());
+    }
+    
+    /**
+     * A task which records its arguments.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Recorder implements LongTask {
+        
+        private final List<Long> arguments = Lists.newArrayList();
+        
+        @Override
+        public void run(long argument) {
+            arguments.add(argument);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link SingleConsumerQueue}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class SingleConsumerQueueTest {
+    
+    private static final int PRODUCERS = 4;
+    
+    private static final int TASKS = 10000;
+    
+    /**
+     * Tests that tasks are polled in insertion order.
+     */
+    @Test
+    public void fifo() {
+        final SingleConsumerQueue unit = new SingleConsumerQueue(10);
+        final List<Runnable> tasks = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            final Runnable task = new Task(0, i);
+            tasks.add(task);
+            Assert.assertTrue(unit.offer(task));
+        }
+        Assert.assertEquals(5, unit.size());
+        for (Runnable task : tasks) {
+            Assert.assertSame(task, unit.poll());
+        }
+        Assert.assertNull(unit.poll());
+    }
+    
+    /**
+     * Tests that offering to a full queue fails.
+     */
+    @Test
+    public void capacity() {
+        final SingleConsumerQueue unit = new SingleConsumerQueue(2);
+        Assert.assertTrue(unit.offer(new Task(0, 0)));
+        Assert.assertTrue(unit.offer(new Task(0, 1)));
+        Assert.assertFalse(unit.offer(new Task(0, 2)));
+        Assert.assertEquals(0, unit.remainingCapacity());
+        unit.poll();
+        Assert.assertTrue(unit.offer(new Task(0, 3)));
+    }
+    
+    /**
+     * Tests that a single consumer sees every task of concurrent producers
+     * exactly once and in per producer order.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void concurrentOfferPoll() throws InterruptedException {
+        final SingleConsumerQueue unit = new SingleConsumerQueue(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> producers = Lists.newArrayList();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            final Thread thread = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < TASKS; i++) {
+                            unit.put(new Task(producer, i));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        start.countDown();
+        
+        final int[] next = new int[PRODUCERS];
+        for (int i = 0; i < PRODUCERS * TASKS; i++) {
+            final Task task = (Task) unit.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull("Timed out after " + i + " task(s)", task);
+            Assert.assertEquals(next[task.producer]++, task.sequence);
+        }
+        Assert.assertNull(unit.poll());
+        for (Thread thread : producers) {
+            thread.join();
+        }
+    }
+    
+    /**
+     * A task which remembers its producer and position.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Task implements Runnable {
+        
+        private final int producer;
+        
+        private final int sequence;
+        
+        public Task(int producer, int sequence) {
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public void run() {
+            // nothing to do
+        }
+        
+    }
+    
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link SpillingQueue}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class SpillingQueueTest {
+    
+    private static final int PRODUCERS = 4;
+    
+    private static final int TASKS = 2000;
+    
+    private File directory;
+    
+    private SpillingQueue unit;
+    
+    /**
+     * Creates a queue keeping two tasks on the heap, spilling into an empty directory.
+     * 
+     * @throws IOException if the directory can't be created
+     */
+    @Before
+    public void before() throws IOException {
+        directory = File.createTempFile("spilling", "");
+        Assert.assertTrue(directory.delete() && directory.mkdir());
+        unit = new SpillingQueue(2);
+        unit.setDirectory(directory);
+    }
+    
+    /**
+     * Closes the queue and removes all segment files.
+     */
+    @After
+    public void after() {
+        unit.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    /**
+     * Tests that tasks beyond the threshold are spilled and restored in FIFO order.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void spillAndRestore() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(unit.offer(new Task(i)));
+        }
+        Assert.assertEquals(2, unit.getMemorySize());
+        Assert.assertEquals(8, unit.getSpilledSize());
+        Assert.assertEquals(10, unit.size());
+        Assert.assertEquals(8L, unit.getSpillCount());
+        for (int i = 0; i < 10; i++) {
+            final Task task = (Task) unit.poll(1L, TimeUnit.SECONDS);
+            Assert.assertNotNull(task);
+            Assert.assertEquals(i, task.id);
+        }
+        Assert.assertNull(unit.poll());
+        Assert.assertEquals(8L, unit.getRestoreCount());
+        Assert.assertEquals(0, unit.getSpilledSize());
+    }
+    
+    /**
+     * Tests that tasks offered while others are spilled queue behind them.
+     */
+    @Test
+    public void interleaved() {
+        int offered = 0;
+        int polled = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(unit.offer(new Task(offered++)));
+            }
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(polled++, ((Task) unit.poll()).id);
+            }
+        }
+        while (polled < offered) {
+            Assert.assertEquals(polled++, ((Task) unit.poll()).id);
+        }
+        Assert.assertTrue(unit.isEmpty());
+    }
+    
+    /**
+     * Tests that a consumer sees every task of concurrent producers exactly once
+     * and in per producer order, while tasks are spilled and restored.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void concurrentOfferPoll() throws InterruptedException {
+        final List<Thread> producers = Lists.newArrayList();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            final Thread thread = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    for (int i = 0; i < TASKS; i++) {
+                        unit.offer(new Task(producer * TASKS + i));
+                    }
+                }
+                
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        
+        final int[] next = new int[PRODUCERS];
+        for (int i = 0; i < PRODUCERS * TASKS; i++) {
+            final Task task = (Task) unit.poll(10L, TimeUnit.SECONDS);
+            Assert.assertNotNull("Timed out after " + i + " task(s)", task);
+            final int producer = task.id / TASKS;
+            Assert.assertEquals(producer * TASKS + next[producer]++, task.id);
+        }
+        Assert.assertNull(unit.poll());
+        for (Thread thread : producers) {
+            thread.join();
+        }
+    }
+    
+    /**
+     * Tests that non serializable tasks are rejected while spilling only.
+     */
+    @Test
+    public void nonSerializable() {
+        final Runnable task = new Runnable() {
+            
+            @Override
+            public void run() {
+                // nothing to do
+            }
+            
+        };
+        Assert.assertTrue(unit.offer(task));
+        Assert.assertTrue(unit.offer(new Task(0)));
+        Assert.assertFalse(unit.offer(task));
+        Assert.assertEquals(1L, unit.getRejectedCount());
+    }
+    
+    /**
+     * Tests that closing deletes all segments and reports the discarded tasks.
+     */
+    @Test
+    public void close() {
+        for (int i = 0; i < 5; i++) {
+            unit.offer(new Task(i));
+        }
+        unit.poll();
+        // polling restored one of the three spilled tasks
+        Assert.assertEquals(2, unit.close());
+        Assert.assertEquals(0, directory.listFiles().length);
+        Assert.assertEquals(0, unit.getSpilledSize());
+    }
+    
+    /**
+     * A serializable task.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Task implements Runnable, Serializable {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int id;
+        
+        public Task(int id) {
+            this.id = id;
+        }
+        
+        @Override
+        public void run() {
+            // nothing to do
+        }
+        
+    }
+    
+}
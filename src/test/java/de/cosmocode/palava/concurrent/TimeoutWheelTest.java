@@ -0,0 +1,161 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TimeoutWheel}.
+ *
+ * @since 2.6
+ * @author Willi Schoenborn
+ */
+public final class TimeoutWheelTest {
+    
+    private final Object owner = new Object();
+    
+    private TimeoutWheel unit;
+    
+    /**
+     * Creates a wheel ticking every millisecond.
+     */
+    @Before
+    public void before() {
+        unit = new TimeoutWheel();
+        unit.setTick(1L);
+        unit.register(owner);
+    }
+    
+    /**
+     * Releases the wheel.
+     */
+    @After
+    public void after() {
+        unit.unregister(owner);
+    }
+    
+    /**
+     * Tests that a timeout expires after, but not before, its delay.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void expiry() throws InterruptedException {
+        final Latch latch = new Latch();
+        final long started = System.nanoTime();
+        unit.schedule(latch, 50L, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5L));
+        Assert.assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50L));
+    }
+    
+    /**
+     * Tests that a cancelled timeout never expires and can't be cancelled twice.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void cancel() throws InterruptedException {
+        final Latch cancelled = new Latch();
+        final Latch expired = new Latch();
+        final TimeoutWheel.Timeout timeout = unit.schedule(cancelled, 20L, TimeUnit.MILLISECONDS);
+        unit.schedule(expired, 100L, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertTrue(expired.await(5L));
+        Assert.assertEquals(1L, cancelled.getCount());
+    }
+    
+    /**
+     * Tests that a timeout spanning more than one revolution of the wheel waits
+     * for its remaining rounds instead of expiring on the first pass of its bucket.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void rounds() throws InterruptedException {
+        final Latch latch = new Latch();
+        final long started = System.nanoTime();
+        // the wheel has 512 buckets, one millisecond each
+        unit.schedule(latch, 800L, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5L));
+        Assert.assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(800L));
+    }
+    
+    /**
+     * Tests that a failing action doesn't stop the wheel.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void failure() throws InterruptedException {
+        unit.schedule(new Runnable() {
+            
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+            
+        }, 1L, TimeUnit.MILLISECONDS);
+        final Latch latch = new Latch();
+        unit.schedule(latch, 20L, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5L));
+    }
+    
+    /**
+     * Tests that pending timeouts still expire after the last owner unregistered.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void unregistered() throws InterruptedException {
+        final Latch latch = new Latch();
+        unit.schedule(latch, 50L, TimeUnit.MILLISECONDS);
+        unit.unregister(owner);
+        Assert.assertTrue(latch.await(5L));
+    }
+    
+    /**
+     * An action counting down a latch.
+     *
+     * @since 2.6
+     * @author Willi Schoenborn
+     */
+    private static final class Latch extends CountDownLatch implements Runnable {
+        
+        public Latch() {
+            super(1);
+        }
+        
+        public boolean await(long seconds) throws InterruptedException {
+            return await(seconds, TimeUnit.SECONDS);
+        }
+        
+        @Override
+        public void run() {
+            countDown();
+        }
+        
+    }
+    
+}